@@ -0,0 +1,298 @@
+package snake.controller;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import snake.metrics.JfrEvents;
+import snake.metrics.LatencyHistogram;
+import snake.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the {@code .snake} configuration and the {@code .dl4j} model of a network without ever leaving a partially written file behind.
+ *
+ * Every file is written to a temporary file in the same directory, forced to disk and then renamed over the previous file,
+ * so after a crash the previous checkpoint is still complete.
+ * The configuration is written before the model and only if it changed, so a checkpoint of a network that is being trained
+ * replaces a single file and the configuration never belongs to an older model.
+ * Temporary files left behind by a crash are deleted when the writer is created.
+ * The last keepCount checkpoints are additionally kept as {@code <name>.checkpoints/<sequence>.dl4j}.
+ *
+ * {@link #saveAsync(String, MultiLayerNetwork)} only copies the parameters and the updater state on the calling thread
+ * and serializes the copy on a background thread.
+ * If the background thread is still busy, only the newest pending snapshot is written.
+ */
+public class CheckpointWriter {
+    private static final LatencyHistogram checkpointHistogram = Metrics.histogram("checkpoint");
+    private static final LatencyHistogram snapshotHistogram = Metrics.histogram("checkpoint.snapshot");
+
+    private final String name;
+    private final int keepCount;
+    private final Path checkpointDirectory;
+
+    private ExecutorService executor;
+    private Snapshot pendingSnapshot;
+    private Future<?> lastWrite;
+    private volatile RuntimeException failure;
+
+    private long sequence;
+
+    public CheckpointWriter(String name, int keepCount) {
+        this.name = name;
+        this.keepCount = keepCount;
+        checkpointDirectory = Paths.get(name + ".checkpoints");
+        deleteTempFiles();
+        sequence = findLastSequence();
+    }
+
+    public int getKeepCount() {
+        return keepCount;
+    }
+
+    /**
+     * Writes a checkpoint on the calling thread, after the pending asynchronous checkpoints.
+     */
+    public void save(String configurationJson, MultiLayerNetwork model) {
+        flush();
+        write(snapshot(configurationJson, model));
+    }
+
+    /**
+     * Copies the model and writes the copy on the background thread.
+     * A failure of a previous asynchronous checkpoint is thrown here.
+     */
+    public synchronized void saveAsync(String configurationJson, MultiLayerNetwork model) {
+        throwFailure();
+        boolean queued = pendingSnapshot != null;
+        pendingSnapshot = snapshot(configurationJson, model);
+        if (!queued) {
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "checkpoint-writer-" + name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            lastWrite = executor.submit(this::writePending);
+        }
+    }
+
+    /**
+     * Waits until all asynchronous checkpoints are written.
+     */
+    public void flush() {
+        Future<?> write;
+        synchronized (this) {
+            write = lastWrite;
+        }
+        if (write != null) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // already stored as failure
+            }
+        }
+        throwFailure();
+    }
+
+    /**
+     * Writes the pending checkpoints and stops the background thread, it is started again when needed.
+     */
+    public void close() {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                if (executor != null) {
+                    executor.shutdown();
+                    executor = null;
+                }
+            }
+        }
+    }
+
+    private void throwFailure() {
+        RuntimeException exception = failure;
+        if (exception != null) {
+            failure = null;
+            throw exception;
+        }
+    }
+
+    private void writePending() {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = pendingSnapshot;
+            pendingSnapshot = null;
+        }
+        try {
+            write(snapshot);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private static Snapshot snapshot(String configurationJson, MultiLayerNetwork model) {
+        long startNanos = System.nanoTime();
+        Snapshot snapshot = new Snapshot();
+        snapshot.configurationJson = configurationJson;
+        snapshot.modelConfiguration = model.getLayerWiseConfigurations().clone();
+        snapshot.parameters = model.params().dup();
+        INDArray updaterState = model.updaterState();
+        snapshot.updaterState = updaterState == null ? null : updaterState.dup();
+        snapshotHistogram.recordSince(startNanos);
+        return snapshot;
+    }
+
+    private synchronized long nextSequence() {
+        return ++sequence;
+    }
+
+    private void write(Snapshot snapshot) {
+        Object event = JfrEvents.beginCheckpoint();
+        long startNanos = System.nanoTime();
+
+        MultiLayerNetwork model = new MultiLayerNetwork(snapshot.modelConfiguration);
+        model.init(snapshot.parameters, false);
+        if (snapshot.updaterState != null) {
+            model.getUpdater().setStateViewArray(model, snapshot.updaterState, false);
+        }
+
+        try {
+            Path snakeFile = Paths.get(name + ".snake");
+            byte[] configuration = snapshot.configurationJson.getBytes(StandardCharsets.UTF_8);
+            if (!Files.exists(snakeFile) || !Arrays.equals(Files.readAllBytes(snakeFile), configuration)) {
+                writeAtomically(snakeFile, output -> output.write(configuration));
+            }
+
+            Path dl4jFile = Paths.get(name + ".dl4j");
+            if (keepCount > 0) {
+                Files.createDirectories(checkpointDirectory);
+                Path checkpointFile = checkpointDirectory.resolve(String.format("%06d.dl4j", nextSequence()));
+                writeAtomically(checkpointFile, output -> ModelSerializer.writeModel(model, output, true));
+                writeAtomically(dl4jFile, output -> Files.copy(checkpointFile, output));
+                deleteOldCheckpoints();
+            } else {
+                writeAtomically(dl4jFile, output -> ModelSerializer.writeModel(model, output, true));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        checkpointHistogram.recordSince(startNanos);
+        JfrEvents.endCheckpoint(event, name);
+    }
+
+    private static void writeAtomically(Path file, FileContentWriter contentWriter) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                contentWriter.write(output);
+            }
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // the temporary files of writeAtomically() are named <file name><random>.tmp
+    private void deleteTempFiles() {
+        Path directory = Paths.get(name).toAbsolutePath().getParent();
+        String fileName = Paths.get(name).getFileName().toString();
+        try {
+            deleteFiles(directory, fileName + ".snake*.tmp");
+            deleteFiles(directory, fileName + ".dl4j*.tmp");
+            if (Files.isDirectory(checkpointDirectory)) {
+                deleteFiles(checkpointDirectory, "*.tmp");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void deleteFiles(Path directory, String glob) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private void deleteOldCheckpoints() throws IOException {
+        List<Path> checkpointFiles = listCheckpointFiles();
+        for (int i = 0; i < checkpointFiles.size() - keepCount; i++) {
+            Files.deleteIfExists(checkpointFiles.get(i));
+        }
+    }
+
+    private long findLastSequence() {
+        List<Path> checkpointFiles = listCheckpointFiles();
+        if (checkpointFiles.isEmpty()) {
+            return 0;
+        }
+        return toSequence(checkpointFiles.get(checkpointFiles.size() - 1));
+    }
+
+    // sorted by sequence, oldest first
+    private List<Path> listCheckpointFiles() {
+        List<Path> checkpointFiles = new ArrayList<>();
+        if (Files.isDirectory(checkpointDirectory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(checkpointDirectory, "*.dl4j")) {
+                for (Path path : stream) {
+                    if (toSequence(path) >= 0) {
+                        checkpointFiles.add(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        checkpointFiles.sort((path1, path2) -> Long.compare(toSequence(path1), toSequence(path2)));
+        return checkpointFiles;
+    }
+
+    private static long toSequence(Path checkpointFile) {
+        String fileName = checkpointFile.getFileName().toString();
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - ".dl4j".length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private interface FileContentWriter {
+        void write(OutputStream output) throws IOException;
+    }
+
+    private static class Snapshot {
+        String configurationJson;
+        MultiLayerConfiguration modelConfiguration;
+        INDArray parameters;
+        INDArray updaterState;
+    }
+}
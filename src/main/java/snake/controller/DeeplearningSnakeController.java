@@ -9,21 +9,35 @@ import org.deeplearning4j.nn.conf.layers.DenseLayer;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.parallelism.ParallelWrapper;
 import org.deeplearning4j.util.ModelSerializer;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.*;
 import org.nd4j.linalg.lossfunctions.ILossFunction;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import snake.domain.*;
+import snake.metrics.Counter;
+import snake.metrics.JfrEvents;
+import snake.metrics.LatencyHistogram;
+import snake.metrics.Metrics;
+import snake.metrics.MetricsReporter;
 import snake.wall.DotsWallBuilder;
 import snake.wall.RandomCompositeWallBuilder;
 import snake.wall.WallBuilder;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 public class DeeplearningSnakeController implements SnakeController {
@@ -34,54 +48,229 @@ public class DeeplearningSnakeController implements SnakeController {
 
     private static final int OUTPUT_COUNT = 4;
 
+    private static final int TRAINING_SAMPLE_COUNT = 1000;
+
+    private static final int TEST_CHUNK_STEPS = 100;
+    private static final int TEST_ROUND_STEPS = 500;
+
+    private static final int CHECKPOINT_KEEP_COUNT = 3;
+    private static final long AUTOSAVE_SECONDS = 60;
+
     private static final boolean PRINT_DEBUG = false;
 
-    private static Map<Tile, Double> tileToInput = new HashMap<>();
+    private static final Counter gameStepsCounter = Metrics.counter("game.steps");
+    private static final Counter episodesStartedCounter = Metrics.counter("episodes.started");
+    private static final Counter episodesDiscardedCounter = Metrics.counter("episodes.discarded");
+    private static final Counter samplesCounter = Metrics.counter("samples");
+    private static final LatencyHistogram fitHistogram = Metrics.histogram("model.fit");
+    private static final LatencyHistogram outputHistogram = Metrics.histogram("model.output");
+    private static final LatencyHistogram evaluationHistogram = Metrics.histogram("evaluation");
+
+    // the apple direction is quantized to this many steps per board size for the inference cache key
+    private static final int APPLE_DIRECTION_STEPS = 63;
+    // bits of a quantized apple direction in -APPLE_DIRECTION_STEPS..APPLE_DIRECTION_STEPS
+    private static final int APPLE_DIRECTION_BITS = 7;
+
+    private static final Move[] indexToMove = new Move[OUTPUT_COUNT];
     static {
-        tileToInput.put(Tile.Empty, 0.9);
-        tileToInput.put(Tile.Apple, 1.0);
-        tileToInput.put(Tile.Wall, 0.0);
-        tileToInput.put(Tile.SnakeHead, 0.0);
-        tileToInput.put(Tile.SnakeTail, 0.0);
+        indexToMove[UP] = Move.Up;
+        indexToMove[DOWN] = Move.Down;
+        indexToMove[LEFT] = Move.Left;
+        indexToMove[RIGHT] = Move.Right;
     }
 
-    private static Map<Integer, Move> indexToMove = new HashMap<>();
+    // output index after one clockwise quarter turn, indexed by output index
+    private static final int[] clockwiseIndex = new int[OUTPUT_COUNT];
     static {
-        indexToMove.put(UP, Move.Up);
-        indexToMove.put(DOWN, Move.Down);
-        indexToMove.put(LEFT, Move.Left);
-        indexToMove.put(RIGHT, Move.Right);
+        clockwiseIndex[UP] = RIGHT;
+        clockwiseIndex[RIGHT] = DOWN;
+        clockwiseIndex[DOWN] = LEFT;
+        clockwiseIndex[LEFT] = UP;
     }
 
-    private final Random random = new Random();
+    private static final String INFERENCE_WORKSPACE_ID = "SNAKE_INFERENCE";
+    private static final WorkspaceConfiguration INFERENCE_WORKSPACE = WorkspaceConfiguration.builder()
+            .policyAllocation(AllocationPolicy.STRICT)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .build();
+
+    // the moves of getMove() are only drawn under the monitor of this controller,
+    // training and testing split their generators from trainingRandom (also under the monitor, see splitTrainingRandom())
+    // replaced by test() when a fork is reused for another chunk
+    private SplittableRandom random;
+    private final SplittableRandom trainingRandom;
     private final String name;
     private final DeeplearningConfiguration deeplearningConfiguration;
+    private final FeatureEncoder featureEncoder;
     private final MultiLayerNetwork model;
 
-    private DeeplearningSnakeController(String name, DeeplearningConfiguration deeplearningConfiguration, MultiLayerNetwork model) {
+    // held while the model is fitted, so that a checkpoint never copies parameters in the middle of a fit
+    private final Object trainingLock = new Object();
+
+    // a copy of the parameters published after every fit, read by forks and the inference batcher instead of the parameters being fitted
+    private volatile INDArray parameterSnapshot;
+
+    private volatile int generatorThreads = Runtime.getRuntime().availableProcessors();
+    // guarded by generatorPoolLock and not by this, because the pipeline producer needs the pool while a setter stops the pipeline
+    private final Object generatorPoolLock = new Object();
+    private ForkJoinPool generatorPool;
+    private TrainingDataSetIterator trainingIterator;
+    private ParallelWrapper parallelWrapper;
+    private InferenceBatcher inferenceBatcher;
+    private int trainingPrefetchDepth;
+    private TrainingPipeline trainingPipeline;
+    private boolean fusedInference = true;
+    private MlpInferenceEngine inferenceEngine;
+    private InferenceCache inferenceCache;
+    private long inferenceCacheModelVersion;
+    private int checkpointKeepCount = CHECKPOINT_KEEP_COUNT;
+    // forks with a copy of the model for testChunks(), one per generator thread, taken out while a test runs
+    private TeacherForks testForks;
+    private CheckpointWriter checkpointWriter;
+
+    // for a fork with a copy of the model: the parameter snapshot that was copied into it
+    private INDArray forkedParameters;
+
+    // starts at an arbitrary offset, so that short-lived forks are sampled too
+    private int moveCount = System.identityHashCode(this);
+
+    // reused by getMove()
+    private float[] inputBuffer;
+    private INDArray inputArray;
+    private final float[] outputBuffer = new float[OUTPUT_COUNT];
+
+    private DeeplearningSnakeController(String name, DeeplearningConfiguration deeplearningConfiguration, MultiLayerNetwork model, SplittableRandom random) {
+        this(name, deeplearningConfiguration, model, random, null);
+    }
+
+    private DeeplearningSnakeController(String name, DeeplearningConfiguration deeplearningConfiguration, MultiLayerNetwork model, SplittableRandom random, InferenceBatcher inferenceBatcher) {
         this.name = name;
         this.deeplearningConfiguration = deeplearningConfiguration;
+        this.featureEncoder = toFeatureEncoder(deeplearningConfiguration);
         this.model = model;
+        this.random = random;
+        this.trainingRandom = random.split();
+        this.inferenceBatcher = inferenceBatcher;
+        if (deeplearningConfiguration.inferenceCacheBits > 0) {
+            setInferenceCache(deeplearningConfiguration.inferenceCacheBits);
+        }
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * Writes the configuration and the model (see {@link CheckpointWriter}), after the pending asynchronous checkpoints.
+     * Waits until a running {@link #train(int, SnakeController, WallBuilder)} has finished fitting.
+     */
     public void save() {
-        save(name, deeplearningConfiguration, model);
+        synchronized (trainingLock) {
+            getCheckpointWriter().save(toJson(deeplearningConfiguration), model);
+        }
+    }
+
+    /**
+     * Copies the model and writes it on a background thread, so that training continues while the checkpoint is written.
+     * Waits until a running {@link #train(int, SnakeController, WallBuilder)} has finished fitting before copying.
+     */
+    public void saveAsync() {
+        synchronized (trainingLock) {
+            getCheckpointWriter().saveAsync(toJson(deeplearningConfiguration), model);
+        }
+    }
+
+    /**
+     * Sets how many of the last checkpoints are kept in the {@code <name>.checkpoints} directory, 0 keeps only the saved model.
+     */
+    public synchronized void setCheckpointKeepCount(int checkpointKeepCount) {
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+            checkpointWriter = null;
+        }
+        this.checkpointKeepCount = checkpointKeepCount;
+    }
+
+    public synchronized int getCheckpointKeepCount() {
+        return checkpointKeepCount;
+    }
+
+    private synchronized CheckpointWriter getCheckpointWriter() {
+        if (checkpointWriter == null) {
+            checkpointWriter = new CheckpointWriter(name, checkpointKeepCount);
+        }
+        return checkpointWriter;
     }
 
     @Override
-    public Move getMove(Snake snake, SnakeMap snakeMap) {
+    public synchronized Move getMove(Snake snake, SnakeMap snakeMap) {
         int x = snake.getX(0);
         int y = snake.getY(0);
 
-        double[] input = toInput(deeplearningConfiguration, snake, snakeMap);
-        INDArray inputArray = Nd4j.create(input);
+        if (inputArray == null) {
+            inputBuffer = new float[featureEncoder.getInputCount()];
+            inputArray = Nd4j.create(1, inputBuffer.length);
+        }
+        boolean sampled = (++moveCount & (JfrEvents.INFERENCE_SAMPLE_INTERVAL - 1)) == 0 && JfrEvents.isInferenceSampleEnabled();
+        long encodeStartNanos = sampled ? System.nanoTime() : 0;
+
+        featureEncoder.encode(snake, snakeMap, inputBuffer, 0);
+        int rotation = featureEncoder.getRotation(snake);
+
+        long outputStartNanos = sampled ? System.nanoTime() : 0;
+        boolean cached = false;
+        if (inferenceCache != null) {
+            long modelVersion = getModelVersion();
+            if (modelVersion != inferenceCacheModelVersion) {
+                inferenceCache.clear();
+                inferenceCacheModelVersion = modelVersion;
+            }
 
-        INDArray outputArray = model.output(inputArray);
-        Move move = pickMove(outputArray);
+            int inputCount = inputBuffer.length;
+            int quantizedAppleX = quantizeAppleDirection(inputBuffer[inputCount - 2]);
+            int quantizedAppleY = quantizeAppleDirection(inputBuffer[inputCount - 1]);
+            inputBuffer[inputCount - 2] = (float) quantizedAppleX / APPLE_DIRECTION_STEPS;
+            inputBuffer[inputCount - 1] = (float) quantizedAppleY / APPLE_DIRECTION_STEPS;
+
+            long key0;
+            long key1;
+            int binaryInputCount = featureEncoder.getBinaryInputCount();
+            if (binaryInputCount == inputCount - 2 && binaryInputCount + 2 * APPLE_DIRECTION_BITS <= 128) {
+                // the observation fits into the key: the binary inputs as bits followed by the quantized apple direction
+                key0 = 0;
+                key1 = 0;
+                for (int i = 0; i < binaryInputCount; i++) {
+                    if (inputBuffer[i] != 0) {
+                        if (i < 64) {
+                            key0 |= 1L << i;
+                        } else {
+                            key1 |= 1L << (i - 64);
+                        }
+                    }
+                }
+                key1 |= (long) ((quantizedAppleX + APPLE_DIRECTION_STEPS) << APPLE_DIRECTION_BITS | (quantizedAppleY + APPLE_DIRECTION_STEPS)) << (64 - 2 * APPLE_DIRECTION_BITS);
+            } else {
+                key0 = 0x9E3779B97F4A7C15L;
+                key1 = 0xC2B2AE3D27D4EB4FL;
+                for (float value : inputBuffer) {
+                    int bits = Float.floatToIntBits(value);
+                    key0 = Long.rotateLeft((key0 ^ bits) * 0xBF58476D1CE4E5B9L, 31);
+                    key1 = Long.rotateLeft((key1 + bits) * 0x94D049BB133111EBL, 27);
+                }
+            }
+
+            cached = inferenceCache.get(key0, key1, outputBuffer);
+            if (!cached) {
+                evaluate();
+                inferenceCache.put(key0, key1, outputBuffer);
+            }
+        } else {
+            evaluate();
+        }
+        if (sampled) {
+            JfrEvents.inferenceSample(outputStartNanos - encodeStartNanos, System.nanoTime() - outputStartNanos, cached);
+        }
+        Move move = indexToMove[rotateIndex(pickMove(outputBuffer), -rotation)];
 
         if (PRINT_DEBUG) {
             int inputWidth = deeplearningConfiguration.inputWidth;
@@ -89,7 +278,7 @@ public class DeeplearningSnakeController implements SnakeController {
             if (!Tile.isValidMove(snakeMap.get(x + move.dX, y + move.dY))) {
                 System.out.println("INVALID " + move);
                 System.out.println("  input =" + inputArray);
-                System.out.println("  output=" + outputArray);
+                System.out.println("  output=" + Arrays.toString(outputBuffer));
                 for (int inputY = 0; inputY < inputWidth; inputY++) {
                     for (int inputX = 0; inputX < inputWidth; inputX++) {
                         System.out.print(snakeMap.get(x + (inputX - inputRadius), y + (inputY - inputRadius)).tileChar);
@@ -103,43 +292,353 @@ public class DeeplearningSnakeController implements SnakeController {
         return move;
     }
 
-    private Move pickMove(INDArray outputArray) {
+    private void evaluate() {
+        long startNanos = System.nanoTime();
+        if (inferenceBatcher == null && fusedInference && (inferenceEngine == null || !inferenceEngine.isCurrent(model))) {
+            inferenceEngine = MlpInferenceEngine.create(model);
+            fusedInference = inferenceEngine != null;
+        }
+
+        if (inferenceBatcher != null) {
+            inferenceBatcher.output(inputBuffer, outputBuffer);
+        } else if (inferenceEngine != null) {
+            inferenceEngine.output(inputBuffer, 0, outputBuffer, 0);
+        } else {
+            inputArray.data().setData(inputBuffer);
+            try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager().getAndActivateWorkspace(INFERENCE_WORKSPACE, INFERENCE_WORKSPACE_ID)) {
+                INDArray outputArray = model.output(inputArray, false, workspace);
+                for (int i = 0; i < OUTPUT_COUNT; i++) {
+                    outputBuffer[i] = outputArray.getFloat(i);
+                }
+            }
+        }
+        outputHistogram.recordSince(startNanos);
+    }
+
+    private static int quantizeAppleDirection(float direction) {
+        return Math.max(-APPLE_DIRECTION_STEPS, Math.min(APPLE_DIRECTION_STEPS, Math.round(direction * APPLE_DIRECTION_STEPS)));
+    }
+
+    private long getModelVersion() {
+        return (long) model.getEpochCount() << 32 | model.getIterationCount();
+    }
+
+    /**
+     * Returns a controller that can be used concurrently with this controller.
+     *
+     * With inference batching the fork shares the batcher, so that the moves of all forks are evaluated together
+     * (the batcher evaluates its own copy of the model, so the forks can play while the model is trained),
+     * otherwise it uses a copy of the model with the parameters of the last fit, see {@link #updateFork(SnakeController)}.
+     */
+    @Override
+    public SnakeController fork(SplittableRandom random) {
+        if (inferenceBatcher != null) {
+            return new DeeplearningSnakeController(name, deeplearningConfiguration, model, random, inferenceBatcher);
+        }
+        INDArray parameters = getParameterSnapshot();
+        DeeplearningSnakeController fork = new DeeplearningSnakeController(name, deeplearningConfiguration, model.clone(), random);
+        fork.setParameters(parameters);
+        fork.forkedParameters = parameters;
+        return fork;
+    }
+
+    /**
+     * Copies the parameters of the last fit into a fork with a copy of the model, if this model was trained since the last copy.
+     * Can be called while this model is fitted.
+     */
+    @Override
+    public void updateFork(SnakeController fork) {
+        if (!(fork instanceof DeeplearningSnakeController)) {
+            return;
+        }
+        DeeplearningSnakeController forkController = (DeeplearningSnakeController) fork;
+        if (forkController.model == model) {
+            return;
+        }
+        INDArray parameters = getParameterSnapshot();
+        if (forkController.forkedParameters != parameters) {
+            forkController.setParameters(parameters);
+            forkController.forkedParameters = parameters;
+        }
+    }
+
+    /**
+     * Enables batching of the moves requested concurrently by this controller and its forks into a single model evaluation.
+     * While batching is enabled it is used instead of the fused inference (see {@link #setFusedInference(boolean)}).
+     * {@link #create(String, DeeplearningConfiguration, SplittableRandom)} enables it with {@link DeeplearningConfiguration#inferenceBatchSize}.
+     *
+     * @param maxBatchSize the maximum number of moves evaluated together, 0 to disable batching
+     * @param maxDelayMicros the maximum time to wait for a batch to fill up
+     */
+    public void setInferenceBatching(int maxBatchSize, long maxDelayMicros) {
+        inferenceBatcher = maxBatchSize > 0 ? new InferenceBatcher(model, this::getParameterSnapshot, featureEncoder.getInputCount(), OUTPUT_COUNT, maxBatchSize, maxDelayMicros) : null;
+    }
+
+    public InferenceBatcher getInferenceBatcher() {
+        return inferenceBatcher;
+    }
+
+    /**
+     * Enables caching the model output per observation (the tiles in the input window and the apple direction).
+     *
+     * If the encoding only has binary inputs besides the apple direction (see {@link FeatureEncoder#getBinaryInputCount()})
+     * and they fit, the key is the observation itself packed into 128 bits, for example the occupancy encoding up to a width of 10.
+     * Otherwise the key is a 128 bit hash (two 64 bit multiply-rotate hashes) of the encoded input,
+     * because the encodings have up to hundreds of float inputs that do not pack into 128 bits.
+     * A hash collision would return the output of another observation; for the few million observations played
+     * its probability is negligible, so the keys are not verified against the inputs.
+     * With the cache the apple direction input is quantized to 1/63 of the board size, so that equal observations have equal keys.
+     * The cache is cleared whenever the model was trained.
+     *
+     * The hits and misses are counted per feature encoding and input width in the {@link snake.metrics.Metrics} counters
+     * {@code inference.cache.<encoding><width>.hits} and {@code .misses}.
+     * Every controller created with {@link DeeplearningConfiguration#inferenceCacheBits} set, including the forks, enables its own cache.
+     *
+     * @param sizeBits the cache has 2^sizeBits entries, 0 to disable the cache
+     */
+    public synchronized void setInferenceCache(int sizeBits) {
+        String metricsName = "inference.cache." + deeplearningConfiguration.featureEncoding + deeplearningConfiguration.inputWidth;
+        inferenceCache = sizeBits > 0 ? new InferenceCache(sizeBits, OUTPUT_COUNT, metricsName) : null;
+        inferenceCacheModelVersion = getModelVersion();
+    }
+
+    public InferenceCache getInferenceCache() {
+        return inferenceCache;
+    }
+
+    /**
+     * Enables evaluating the model in plain Java instead of ND4J, which is much faster for the small dense networks used here.
+     *
+     * The weights are copied again whenever the model was trained.
+     * Models that cannot be evaluated this way (other layer types or activations) always use ND4J.
+     * Has no effect while inference batching is enabled.
+     */
+    public synchronized void setFusedInference(boolean fusedInference) {
+        this.fusedInference = fusedInference;
+        inferenceEngine = null;
+    }
+
+    public boolean isFusedInference() {
+        return fusedInference;
+    }
+
+    /**
+     * Enables generating the training data on a background thread while the model is fitted, see {@link TrainingPipeline}.
+     *
+     * The pipeline keeps generating (up to prefetchDepth minibatches ahead) between calls to {@link #train(int, SnakeController, WallBuilder)}
+     * and is restarted when train is called with another teacher or wall builder.
+     *
+     * @param prefetchDepth the maximum number of minibatches generated ahead, 0 to generate them on the training thread
+     */
+    public void setTrainingPrefetch(int prefetchDepth) {
+        TrainingPipeline stoppedPipeline;
+        synchronized (this) {
+            if (prefetchDepth == trainingPrefetchDepth) {
+                return;
+            }
+            trainingPrefetchDepth = prefetchDepth;
+            stoppedPipeline = trainingPipeline;
+            trainingPipeline = null;
+        }
+        stop(stoppedPipeline);
+    }
+
+    // the pipeline is stopped without holding the lock of this controller, because its producer may need the lock to finish the minibatch
+    private static void stop(TrainingPipeline pipeline) {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    public TrainingPipeline getTrainingPipeline() {
+        return trainingPipeline;
+    }
+
+    public int getGeneratorThreads() {
+        return generatorThreads;
+    }
+
+    /**
+     * Sets the number of worker threads generating the training data in {@link #train(int, SnakeController, WallBuilder)}.
+     */
+    public void setGeneratorThreads(int generatorThreads) {
+        TrainingPipeline stoppedPipeline;
+        synchronized (this) {
+            this.generatorThreads = generatorThreads;
+            stoppedPipeline = trainingPipeline;
+            trainingPipeline = null;
+        }
+        stop(stoppedPipeline);
+        shutdownGeneratorPool();
+    }
+
+    private static int rotateIndex(int index, int clockwiseQuarterTurns) {
+        for (int i = 0; i < (clockwiseQuarterTurns & 3); i++) {
+            index = clockwiseIndex[index];
+        }
+        return index;
+    }
+
+    private int pickMove(float[] output) {
         double sum = 0;
-        for(int index : Arrays.asList(UP, DOWN, LEFT, RIGHT)) {
-            double value = outputArray.getDouble(index);
-            sum += value;
+        for (int index = 0; index < OUTPUT_COUNT; index++) {
+            sum += output[index];
         }
 
         double r = random.nextDouble() * sum;
         sum = 0;
-        for(int index : Arrays.asList(UP, DOWN, LEFT, RIGHT)) {
-            double value = outputArray.getDouble(index);
-            sum += value;
+        for (int index = 0; index < OUTPUT_COUNT; index++) {
+            sum += output[index];
             if (r <= sum) {
-                return indexToMove.get(index);
+                return index;
             }
         }
 
-        return Move.Up;
+        return UP;
+    }
+
+    /**
+     * Returns the number of samples fitted by {@code train(1, ...)}.
+     */
+    public int getTrainingSampleCount() {
+        return getTrainingBatchCount(1) * TRAINING_SAMPLE_COUNT;
+    }
+
+    // with data-parallel training every fit gets at least one averaging round of minibatches for every worker,
+    // otherwise a single minibatch would be fitted by one worker and the parameters never averaged
+    private int getTrainingBatchCount(int n) {
+        if (deeplearningConfiguration.parallelWorkers > 1) {
+            return Math.max(n, deeplearningConfiguration.parallelWorkers * Math.max(1, deeplearningConfiguration.averagingFrequency));
+        }
+        return n;
     }
 
     public double train(int n) {
         return train(n, this, new RandomCompositeWallBuilder());
     }
 
+    /**
+     * Fits n minibatches of samples played by the teacher, with data-parallel training at least
+     * {@link DeeplearningConfiguration#parallelWorkers} * {@link DeeplearningConfiguration#averagingFrequency} minibatches.
+     *
+     * @return the score of the model
+     */
     public double train(int n, SnakeController teacher, WallBuilder wallBuilder) {
-        for (int i = 0; i < n; i++) {
-            List<DataSet> dataSets = createGameDataSets(deeplearningConfiguration, teacher, wallBuilder);
+        synchronized (trainingLock) {
+            if (parameterSnapshot == null) {
+                publishParameters();
+            }
+            double score = fit(n, teacher, wallBuilder);
+            publishParameters();
+            return score;
+        }
+    }
+
+    // must be called with the training lock
+    private void publishParameters() {
+        parameterSnapshot = model.params().dup();
+    }
 
-            if (!dataSets.isEmpty()) {
-                DataSet dataSet = DataSet.merge(dataSets);
-                model.fit(dataSet);
+    /**
+     * Returns a copy of the parameters that is not changed by training, the same instance until the model is trained again.
+     */
+    private INDArray getParameterSnapshot() {
+        INDArray snapshot = parameterSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        // train() publishes a snapshot before it starts fitting, so this only waits if the model was never trained
+        synchronized (trainingLock) {
+            if (parameterSnapshot == null) {
+                publishParameters();
             }
+            return parameterSnapshot;
+        }
+    }
+
+    private double fit(int n, SnakeController teacher, WallBuilder wallBuilder) {
+        boolean parallel = deeplearningConfiguration.parallelWorkers > 1;
+        n = getTrainingBatchCount(n);
+        if (trainingIterator == null || trainingIterator.isDetached() != parallel) {
+            trainingIterator = new TrainingDataSetIterator(this, featureEncoder.getInputCount(), OUTPUT_COUNT, TRAINING_SAMPLE_COUNT, parallel);
+        }
+        trainingIterator.prepare(teacher, wallBuilder, getTrainingPipeline(teacher, wallBuilder), n);
+        Object event = JfrEvents.beginFit();
+        long startNanos = System.nanoTime();
+        if (parallel) {
+            getParallelWrapper().fit(trainingIterator);
+        } else {
+            model.fit(trainingIterator);
         }
+        fitHistogram.recordSince(startNanos);
+        JfrEvents.endFit(event, n, parallel);
 
         return model.score();
     }
 
+    /**
+     * Returns the wrapper training replicas of the model on {@link DeeplearningConfiguration#parallelWorkers} threads,
+     * averaging their parameters every {@link DeeplearningConfiguration#averagingFrequency} minibatches.
+     */
+    private synchronized ParallelWrapper getParallelWrapper() {
+        if (parallelWrapper == null) {
+            parallelWrapper = new ParallelWrapper.Builder<>(model)
+                    .workers(deeplearningConfiguration.parallelWorkers)
+                    .averagingFrequency(deeplearningConfiguration.averagingFrequency)
+                    .prefetchBuffer(deeplearningConfiguration.parallelPrefetch)
+                    .trainingMode(ParallelWrapper.TrainingMode.AVERAGING)
+                    .reportScoreAfterAveraging(true)
+                    .build();
+        }
+        return parallelWrapper;
+    }
+
+    /**
+     * Stops the background threads used for training, testing and checkpointing, they are started again when needed.
+     * Pending asynchronous checkpoints are written first.
+     */
+    public void shutdown() {
+        setTrainingPrefetch(0);
+        synchronized (this) {
+            if (checkpointWriter != null) {
+                checkpointWriter.close();
+            }
+            if (parallelWrapper != null) {
+                parallelWrapper.shutdown();
+                parallelWrapper = null;
+            }
+        }
+        shutdownGeneratorPool();
+    }
+
+    private TrainingPipeline getTrainingPipeline(SnakeController teacher, WallBuilder wallBuilder) {
+        TrainingPipeline stoppedPipeline;
+        int prefetchDepth;
+        synchronized (this) {
+            prefetchDepth = trainingPrefetchDepth;
+            if (prefetchDepth <= 0) {
+                return null;
+            }
+            if (trainingPipeline != null && trainingPipeline.isFor(teacher, wallBuilder)) {
+                return trainingPipeline;
+            }
+            stoppedPipeline = trainingPipeline;
+            trainingPipeline = null;
+        }
+        stop(stoppedPipeline);
+
+        TrainingPipeline pipeline = new TrainingPipeline(this, teacher, wallBuilder, splitTrainingRandom(), featureEncoder.getInputCount(), OUTPUT_COUNT, TRAINING_SAMPLE_COUNT, prefetchDepth);
+        synchronized (this) {
+            if (trainingPipeline == null && trainingPrefetchDepth == prefetchDepth) {
+                trainingPipeline = pipeline;
+                return pipeline;
+            }
+        }
+        // the prefetch was changed in the meantime, this minibatch is generated on the training thread
+        stop(pipeline);
+        return null;
+    }
+
     public Statistics test() {
         return test(1000);
     }
@@ -148,7 +647,118 @@ public class DeeplearningSnakeController implements SnakeController {
         return test(steps, new DotsWallBuilder(2));
     }
 
+    /**
+     * Plays steps steps on 20x20 boards and returns the fraction of steps that died and that ate an apple.
+     *
+     * The steps are played in chunks of {@value #TEST_CHUNK_STEPS} steps on the generator threads, every chunk with its own random generator,
+     * so the result only depends on the seed and not on the number of threads.
+     * If the model cannot be shared, one fork per generator thread is created and reused for all chunks and later tests.
+     */
     public Statistics test(int steps, WallBuilder wallBuilder) {
+        Object event = JfrEvents.beginEvaluation();
+        long startNanos = System.nanoTime();
+        int[] counts = testChunks(steps, wallBuilder, isTestModelShareable());
+        Statistics statistics = new Statistics(steps, counts[0], counts[1]);
+        evaluationHistogram.recordSince(startNanos);
+        JfrEvents.endEvaluation(event, steps, statistics.dead, statistics.eaten);
+        return statistics;
+    }
+
+    public Statistics test(double maxIntervalWidth, int maxSteps) {
+        return test(maxIntervalWidth, maxSteps, new DotsWallBuilder(2));
+    }
+
+    /**
+     * Plays rounds of {@value #TEST_ROUND_STEPS} steps like {@link #test(int, WallBuilder)} until the confidence intervals
+     * of both {@link Statistics#dead} and {@link Statistics#eaten} are at most maxIntervalWidth wide or maxSteps steps were played.
+     *
+     * @return the statistics with the confidence intervals and the number of steps played
+     * @throws IllegalArgumentException if maxSteps is not positive
+     */
+    public Statistics test(double maxIntervalWidth, int maxSteps, WallBuilder wallBuilder) {
+        if (maxSteps <= 0) {
+            throw new IllegalArgumentException("maxSteps must be positive: " + maxSteps);
+        }
+        Object event = JfrEvents.beginEvaluation();
+        long startNanos = System.nanoTime();
+        boolean shareModel = isTestModelShareable();
+
+        int steps = 0;
+        int countDead = 0;
+        int countEaten = 0;
+        Statistics statistics;
+        do {
+            int roundSteps = Math.min(TEST_ROUND_STEPS, maxSteps - steps);
+            int[] counts = testChunks(roundSteps, wallBuilder, shareModel);
+            steps += roundSteps;
+            countDead += counts[0];
+            countEaten += counts[1];
+            statistics = new Statistics(steps, countDead, countEaten);
+        } while (steps < maxSteps && (statistics.getDeadIntervalWidth() > maxIntervalWidth || statistics.getEatenIntervalWidth() > maxIntervalWidth));
+
+        evaluationHistogram.recordSince(startNanos);
+        JfrEvents.endEvaluation(event, steps, statistics.dead, statistics.eaten);
+        return statistics;
+    }
+
+    // forks evaluating with the fused engine or the batcher can share the model, because neither evaluates the model itself
+    private boolean isTestModelShareable() {
+        return inferenceBatcher != null || (fusedInference && MlpInferenceEngine.supports(model));
+    }
+
+    private int[] testChunks(int steps, WallBuilder wallBuilder, boolean shareModel) {
+        // one controller per generator thread, every chunk gets its own random generator for the moves so that the result does not depend on the thread
+        int workerCount = Math.max(1, generatorThreads);
+        TeacherForks forks = null;
+        ArrayBlockingQueue<DeeplearningSnakeController> controllers = new ArrayBlockingQueue<>(workerCount);
+        if (shareModel) {
+            for (int i = 0; i < workerCount; i++) {
+                // the random generator is replaced before every chunk
+                controllers.add(new DeeplearningSnakeController(name, deeplearningConfiguration, model, new SplittableRandom(), inferenceBatcher));
+            }
+        } else {
+            synchronized (this) {
+                forks = testForks;
+                testForks = null;
+            }
+            forks = getTeacherForks(forks, this, workerCount);
+            forks.update();
+            for (int i = 0; i < workerCount; i++) {
+                controllers.add((DeeplearningSnakeController) forks.get(i));
+            }
+        }
+
+        List<Callable<int[]>> tasks = new ArrayList<>();
+        for (int chunkStart = 0; chunkStart < steps; chunkStart += TEST_CHUNK_STEPS) {
+            int chunkSteps = Math.min(TEST_CHUNK_STEPS, steps - chunkStart);
+            SplittableRandom chunkRandom = splitTrainingRandom();
+            SplittableRandom controllerRandom = chunkRandom.split();
+            tasks.add(() -> {
+                DeeplearningSnakeController controller = controllers.take();
+                try {
+                    controller.random = controllerRandom;
+                    return test(controller, chunkSteps, wallBuilder, chunkRandom);
+                } finally {
+                    controllers.add(controller);
+                }
+            });
+        }
+
+        int[] counts = new int[2];
+        for (int[] chunkCounts : invokeAll(tasks)) {
+            counts[0] += chunkCounts[0];
+            counts[1] += chunkCounts[1];
+        }
+
+        if (forks != null) {
+            synchronized (this) {
+                testForks = forks;
+            }
+        }
+        return counts;
+    }
+
+    private static int[] test(SnakeController controller, int steps, WallBuilder wallBuilder, SplittableRandom random) {
         int countEaten = 0;
         int countDead = 0;
 
@@ -156,7 +766,7 @@ public class DeeplearningSnakeController implements SnakeController {
         boolean alive = true;
         for (int i = 0; i < steps; i++) {
             if (game == null || !alive) {
-                game = new SnakeGame(20, 20, wallBuilder, 1, this);
+                game = new SnakeGame(20, 20, wallBuilder, 1, controller, random.split());
             }
             alive = game.step();
             if (alive) {
@@ -168,7 +778,8 @@ public class DeeplearningSnakeController implements SnakeController {
                 countDead++;
             }
         }
-        return new Statistics((double)countDead/steps, (double)countEaten/steps);
+        gameStepsCounter.add(steps);
+        return new int[] { countDead, countEaten };
     }
 
     @Override
@@ -176,42 +787,61 @@ public class DeeplearningSnakeController implements SnakeController {
         return "AI " + name;
     }
 
-    public static DeeplearningSnakeController create(String name) {
-        String snakeFileName = name + ".snake";
+    public float[] getParameters() {
+        return model.params().dup().data().asFloat();
+    }
 
-        DeeplearningConfiguration deeplearningConfiguration = loadDeeplearningConfiguration(snakeFileName);
-        return create(name, deeplearningConfiguration);
+    /**
+     * Replaces the parameters of the model, for example with the parameters averaged over several trainers.
+     */
+    public void setParameters(float[] parameters) {
+        synchronized (trainingLock) {
+            setParameters(Nd4j.create(parameters, new int[] { 1, parameters.length }));
+            publishParameters();
+        }
     }
 
-    public static DeeplearningSnakeController create(String name, DeeplearningConfiguration deeplearningConfiguration) {
-        String dl4jFileName = name + ".dl4j";
-        MultiLayerNetwork model = loadNetwork(dl4jFileName, deeplearningConfiguration);
+    private synchronized void setParameters(INDArray parameters) {
+        model.params().assign(parameters);
+        inferenceEngine = null;
+        if (inferenceCache != null) {
+            inferenceCache.clear();
+        }
+    }
 
-        return new DeeplearningSnakeController(name, deeplearningConfiguration, model);
+    public static DeeplearningSnakeController create(String name) {
+        return create(name, new SplittableRandom());
     }
 
-    private static void save(String name, DeeplearningConfiguration deeplearningConfiguration, MultiLayerNetwork model) {
+    public static DeeplearningSnakeController create(String name, SplittableRandom random) {
         String snakeFileName = name + ".snake";
 
-        try (FileWriter writer = new FileWriter(snakeFileName)) {
-            GsonBuilder gsonBuilder = new GsonBuilder();
-            Gson gson = gsonBuilder.create();
-            String json = gson.toJson(deeplearningConfiguration);
+        DeeplearningConfiguration deeplearningConfiguration = loadDeeplearningConfiguration(snakeFileName);
+        return create(name, deeplearningConfiguration, random);
+    }
 
-            writer.write(json);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public static DeeplearningSnakeController create(String name, DeeplearningConfiguration deeplearningConfiguration) {
+        return create(name, deeplearningConfiguration, new SplittableRandom());
+    }
 
+    public static DeeplearningSnakeController create(String name, DeeplearningConfiguration deeplearningConfiguration, SplittableRandom random) {
         String dl4jFileName = name + ".dl4j";
-        try {
-            ModelSerializer.writeModel(model, dl4jFileName, true);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        MultiLayerNetwork model = loadNetwork(dl4jFileName, deeplearningConfiguration);
+
+        DeeplearningSnakeController controller = new DeeplearningSnakeController(name, deeplearningConfiguration, model, random);
+        if (deeplearningConfiguration.inferenceBatchSize > 0) {
+            controller.setInferenceBatching(deeplearningConfiguration.inferenceBatchSize, deeplearningConfiguration.inferenceBatchDelayMicros);
         }
+        return controller;
     }
 
-    private static DeeplearningConfiguration loadDeeplearningConfiguration(String snakeFileName) {
+    private static String toJson(DeeplearningConfiguration deeplearningConfiguration) {
+        GsonBuilder gsonBuilder = new GsonBuilder();
+        Gson gson = gsonBuilder.create();
+        return gson.toJson(deeplearningConfiguration);
+    }
+
+    public static DeeplearningConfiguration loadDeeplearningConfiguration(String snakeFileName) {
         File snakeFile = new File(snakeFileName);
         if (snakeFile.exists()) {
             try {
@@ -241,8 +871,41 @@ public class DeeplearningSnakeController implements SnakeController {
         }
     }
 
+    /**
+     * Without arguments trains the "snake" network.
+     *
+     * {@code benchmark [iterations]} prints the throughput of the data-parallel training, see {@link #benchmarkParallelTraining(SnakeController, int)}.
+     *
+     * Distributed training over several processes:
+     * <ul>
+     * <li>{@code coordinator <name> <port> <workerCount> <iterationsPerRound> <seconds>}</li>
+     * <li>{@code worker <host> <port> [generatorThreads]}</li>
+     * <li>{@code local <name> <workerCount> <iterationsPerRound> <seconds>} runs a coordinator and the workers on this machine</li>
+     * </ul>
+     *
+     * The metrics are reported periodically if the system property {@code snake.metrics.period} is set, see {@link MetricsReporter}.
+     */
     public static void main(String[] args) {
+        MetricsReporter metricsReporter = MetricsReporter.startFromSystemProperties();
         try {
+            if (args.length > 0) {
+                switch (args[0]) {
+                    case "coordinator":
+                        DistributedTraining.coordinate(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]), Long.parseLong(args[5]));
+                        return;
+                    case "worker":
+                        DistributedTraining.work(args[1], Integer.parseInt(args[2]), new LookaheadRandomSnakeController(), args.length > 3 ? Integer.parseInt(args[3]) : 0);
+                        return;
+                    case "local":
+                        DistributedTraining.runLocal(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]));
+                        return;
+                    case "benchmark":
+                        benchmarkParallelTraining(new LookaheadRandomSnakeController(), args.length > 1 ? Integer.parseInt(args[1]) : 20);
+                        return;
+                }
+                throw new IllegalArgumentException("Unknown mode: " + args[0]);
+            }
+
             //train("snake", new BoringSnakeController(), 60);
             train("snake", new LookaheadRandomSnakeController(), 0);
             //train("snake", null, 1 * 60);
@@ -250,11 +913,51 @@ public class DeeplearningSnakeController implements SnakeController {
             e.printStackTrace();
         } catch (InterruptedException e) {
             e.printStackTrace();
+        } finally {
+            if (metricsReporter != null) {
+                metricsReporter.stop();
+            }
         }
     }
 
     public static void train(String name, SnakeController teacher, long seconds) throws IOException, InterruptedException {
+        train(name, teacher, seconds, 0, AUTOSAVE_SECONDS);
+    }
+
+    /**
+     * Prints the training throughput of a new network with the default configuration for different numbers of data-parallel workers.
+     */
+    public static void benchmarkParallelTraining(SnakeController teacher, int iterations) {
+        WallBuilder wallBuilder = new RandomCompositeWallBuilder();
+        for (int workers : new int[] { 1, 2, 4, 8, 16 }) {
+            DeeplearningConfiguration deeplearningConfiguration = new DeeplearningConfiguration();
+            deeplearningConfiguration.parallelWorkers = workers;
+            MultiLayerNetwork model = createNetwork(deeplearningConfiguration);
+            model.init();
+            DeeplearningSnakeController controller = new DeeplearningSnakeController("benchmark", deeplearningConfiguration, model, new SplittableRandom(1));
+
+            controller.train(workers, teacher, wallBuilder);
+            long startNanos = System.nanoTime();
+            double score = controller.train(iterations, teacher, wallBuilder);
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            controller.shutdown();
+
+            System.out.printf("Workers: %2d  samples/s: %8.0f  score: %.4f%n", workers, controller.getTrainingBatchCount(iterations) * TRAINING_SAMPLE_COUNT / seconds, score);
+        }
+    }
+
+    public static void train(String name, SnakeController teacher, long seconds, int prefetchDepth) throws IOException, InterruptedException {
+        train(name, teacher, seconds, prefetchDepth, 0);
+    }
+
+    /**
+     * Trains the network with the specified name for the specified time and saves it.
+     *
+     * @param autosaveSeconds if positive an asynchronous checkpoint is written every autosaveSeconds while training
+     */
+    public static void train(String name, SnakeController teacher, long seconds, int prefetchDepth, long autosaveSeconds) throws IOException, InterruptedException {
         DeeplearningSnakeController deeplearningSnakeController = create(name);
+        deeplearningSnakeController.setTrainingPrefetch(prefetchDepth);
         WallBuilder wallBuilder = new RandomCompositeWallBuilder();
 
         if (teacher == null) {
@@ -262,11 +965,22 @@ public class DeeplearningSnakeController implements SnakeController {
         }
 
         long endMillis = System.currentTimeMillis() + seconds * 1000;
+        long autosaveMillis = System.currentTimeMillis() + autosaveSeconds * 1000;
         do {
             double score = deeplearningSnakeController.train(1, teacher, wallBuilder);
             System.out.println("Score: " + score);
+
+            if (autosaveSeconds > 0 && System.currentTimeMillis() >= autosaveMillis) {
+                deeplearningSnakeController.saveAsync();
+                autosaveMillis = System.currentTimeMillis() + autosaveSeconds * 1000;
+            }
         } while (System.currentTimeMillis() < endMillis);
 
+        if (deeplearningSnakeController.getTrainingPipeline() != null) {
+            System.out.println(deeplearningSnakeController.getTrainingPipeline());
+        }
+        deeplearningSnakeController.shutdown();
+
         /*
         DataSet testDataSet = DataSet.merge(createGameDataSets(teacher));
         Evaluation evaluation = new Evaluation(OUTPUT_COUNT);
@@ -277,96 +991,167 @@ public class DeeplearningSnakeController implements SnakeController {
         deeplearningSnakeController.save();
     }
 
-    private static List<DataSet> createGameDataSets(DeeplearningConfiguration deeplearningConfiguration, SnakeController controller, WallBuilder wallBuilder) {
-        return createGameDataSets(deeplearningConfiguration, () -> {
-            Random random = new Random();
+    /**
+     * Fills the sample buffers (one per generator worker) with at least sampleCount samples in total.
+     */
+    void generateSamples(TeacherForks teachers, WallBuilder wallBuilder, SampleBuffer[] sampleBuffers, int sampleCount) {
+        generateSamples(teachers, wallBuilder, sampleBuffers, sampleCount, splitTrainingRandom());
+    }
+
+    /**
+     * Returns the forks of the teacher for the generator workers, reusing the specified forks if they are for the same teacher.
+     */
+    TeacherForks getTeacherForks(TeacherForks teachers, SnakeController teacher, int workerCount) {
+        if (teachers != null && teachers.isFor(teacher, workerCount)) {
+            return teachers;
+        }
+        return new TeacherForks(teacher, workerCount, splitTrainingRandom());
+    }
+
+    /**
+     * Returns a new generator for training or testing, can be called from any thread.
+     */
+    private synchronized SplittableRandom splitTrainingRandom() {
+        return trainingRandom.split();
+    }
+
+    /**
+     * Fills the sample buffers like {@link #generateSamples(TeacherForks, WallBuilder, SampleBuffer[], int)} using the specified random generator.
+     * The teacher forks must have one fork per sample buffer.
+     */
+    void generateSamples(TeacherForks teachers, WallBuilder wallBuilder, SampleBuffer[] sampleBuffers, int sampleCount, SplittableRandom random) {
+        int workerCount = sampleBuffers.length;
+        int workerSampleCount = (sampleCount + workerCount - 1) / workerCount;
+        teachers.update();
+        if (workerCount == 1) {
+            generateSamples(featureEncoder, teachers.get(0), wallBuilder, random, sampleBuffers[0], workerSampleCount);
+            return;
+        }
+
+        // every worker gets its own generator, teacher and buffer, the buffers are consumed in worker order so that a seed replays identically
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            SplittableRandom workerRandom = random.split();
+            SnakeController workerTeacher = teachers.get(i);
+            SampleBuffer workerSampleBuffer = sampleBuffers[i];
+            tasks.add(() -> {
+                generateSamples(featureEncoder, workerTeacher, wallBuilder, workerRandom, workerSampleBuffer, workerSampleCount);
+                return null;
+            });
+        }
+
+        invokeAll(tasks);
+    }
+
+    /**
+     * Runs the tasks on the generator threads and returns their results in task order.
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : getGeneratorPool().invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    private ForkJoinPool getGeneratorPool() {
+        synchronized (generatorPoolLock) {
+            if (generatorPool == null) {
+                generatorPool = new ForkJoinPool(generatorThreads);
+            }
+            return generatorPool;
+        }
+    }
+
+    private void shutdownGeneratorPool() {
+        synchronized (generatorPoolLock) {
+            if (generatorPool != null) {
+                generatorPool.shutdown();
+                generatorPool = null;
+            }
+        }
+    }
+
+    private static void generateSamples(FeatureEncoder featureEncoder, SnakeController controller, WallBuilder wallBuilder, SplittableRandom random, SampleBuffer sampleBuffer, int sampleCount) {
+        generateSamples(featureEncoder, sampleBuffer, sampleCount, () -> {
             int width = random.nextInt(10) + 5;
             int height = random.nextInt(10) + 5;
             int initialLength = random.nextInt(width * height / 2) + 1;
-            return new SnakeGame(width, height, wallBuilder, initialLength, controller);
+            return new SnakeGame(width, height, wallBuilder, initialLength, controller, random.split());
         });
     }
 
-    private static List<DataSet> createGameDataSets(DeeplearningConfiguration deeplearningConfiguration, Supplier<SnakeGame> gameCreator) {
-        List<DataSet> resultDataSets = new ArrayList<>();
+    private static void generateSamples(FeatureEncoder featureEncoder, SampleBuffer sampleBuffer, int sampleCount, Supplier<SnakeGame> gameCreator) {
+        Object event = JfrEvents.beginSampleGeneration();
+        sampleBuffer.clear();
 
+        int steps = 0;
+        int episodes = 0;
+        int discardedEpisodes = 0;
         SnakeGame game = null;
         boolean hasEaten = false;
-        while (resultDataSets.size() < 1000) {
+        while (sampleBuffer.size() < sampleCount) {
             if (game == null || !game.snake.alive || !hasEaten) {
                 game = gameCreator.get();
             }
-            List<DataSet> tempDataSets = new ArrayList<>();
+            int episodeStart = sampleBuffer.size();
+            episodes++;
 
             int stepCounter = 0;
             do {
                 stepCounter++;
-                double[] input = toInput(deeplearningConfiguration, game);
+                int offset = sampleBuffer.nextFeaturesOffset();
+                featureEncoder.encode(game.snake, game.snakeMap, sampleBuffer.features, offset);
+                int rotation = featureEncoder.getRotation(game.snake);
                 game.step();
                 if (game.snake.alive) {
-                    int outputLabel = game.getMove().ordinal();
-                    DataSet dataSet = toDataSet(outputLabel, OUTPUT_COUNT, input);
-                    //System.out.println(game.getMove());
-                    //System.out.println(dataSet);
-                    //System.out.println();
-
-                    tempDataSets.add(dataSet);
+                    sampleBuffer.add(rotateIndex(game.getMove().ordinal(), rotation));
                 }
                 hasEaten = game.getHasEaten();
             } while (game.snake.alive && !hasEaten && stepCounter < 100);
+            steps += stepCounter;
 
-            if (game.snake.alive && hasEaten) {
-                resultDataSets.addAll(tempDataSets);
+            if (!game.snake.alive || !hasEaten) {
+                sampleBuffer.truncate(episodeStart);
+                discardedEpisodes++;
             }
         }
 
-        return resultDataSets;
+        gameStepsCounter.add(steps);
+        episodesStartedCounter.add(episodes);
+        episodesDiscardedCounter.add(discardedEpisodes);
+        samplesCounter.add(sampleBuffer.size());
+        JfrEvents.endSampleGeneration(event, steps, episodes, discardedEpisodes, sampleBuffer.size());
     }
 
-    private static double[] toInput(DeeplearningConfiguration deeplearningConfiguration, SnakeGame game) {
-        return toInput(deeplearningConfiguration, game.snake, game.snakeMap);
+    private static int getInputCount(DeeplearningConfiguration deeplearningConfiguration) {
+        return toFeatureEncoder(deeplearningConfiguration).getInputCount();
     }
 
-    private static double[] toInput(DeeplearningConfiguration deeplearningConfiguration, Snake snake, SnakeMap snakeMap) {
-        int x = snake.getX(0);
-        int y = snake.getY(0);
-
-        int appleX = snakeMap.getAppleX();
-        int appleY = snakeMap.getAppleY();
-
-        int directionAppleX = appleX - x;
-        int directionAppleY = appleY - y;
-        double relDirectionAppleX = (double)directionAppleX / snakeMap.width;
-        double relDirectionAppleY = (double)directionAppleY / snakeMap.height;
-
-        int inputWidth = deeplearningConfiguration.inputWidth;
-        int inputRadius = inputWidth / 2;
-        int inputCount = inputWidth * inputWidth + 2;
-        double[] input = new double[inputCount];
-        for (int inputY = 0; inputY < inputWidth; inputY++) {
-            for (int inputX = 0; inputX < inputWidth; inputX++) {
-                input[inputX + inputY * inputWidth] = tileToInput.get(snakeMap.get(x + (inputX - inputRadius), y + (inputY - inputRadius)));
-            }
+    private static FeatureEncoder toFeatureEncoder(DeeplearningConfiguration configuration) {
+        FeatureEncoding featureEncoding = configuration.featureEncoding == null ? FeatureEncoding.Window : configuration.featureEncoding;
+        switch (featureEncoding) {
+            case Window:
+                return new WindowFeatureEncoder(configuration.inputWidth);
+            case EgocentricWindow:
+                return new EgocentricWindowFeatureEncoder(configuration.inputWidth);
+            case Rays:
+                return new RayFeatureEncoder();
+            case Occupancy:
+                return new OccupancyFeatureEncoder(configuration.inputWidth);
         }
-        input[inputCount - 2] = relDirectionAppleX;
-        input[inputCount - 1] = relDirectionAppleY;
-        return input;
-    }
-
-    private static DataSet toDataSet(int outputLabel, int outputLabelCount, double... input) {
-        INDArray inputArray = Nd4j.create(input);
-
-        double[] output = new double[outputLabelCount];
-        for (int i = 0; i < output.length; i++) {
-            output[i] = i == outputLabel ? 1.0 : 0.0;
-        }
-        INDArray outputArray = Nd4j.create(output);
-        return new DataSet(inputArray, outputArray);
+        throw new RuntimeException("Unknown: " + configuration.featureEncoding);
     }
 
     private static MultiLayerNetwork createNetwork(DeeplearningConfiguration deeplearningConfiguration) {
-        final int inputWidth = deeplearningConfiguration.inputWidth;
-        final int inputCount = inputWidth * inputWidth + 2;
+        final int inputCount = getInputCount(deeplearningConfiguration);
 
         int layerIndex = 0;
         NeuralNetConfiguration.ListBuilder listBuilder = new NeuralNetConfiguration.Builder()
@@ -428,13 +1213,64 @@ public class DeeplearningSnakeController implements SnakeController {
         return deeplearningConfiguration;
     }
 
+    /**
+     * The fraction of steps that died and that ate an apple, with their 95% confidence intervals (Wilson score interval).
+     */
     public static class Statistics {
+        private static final double Z_95 = 1.96;
+
         public final double dead;
         public final double eaten;
 
+        public final int steps;
+        public final double deadLow;
+        public final double deadHigh;
+        public final double eatenLow;
+        public final double eatenHigh;
+
         public Statistics(double dead, double eaten) {
             this.dead = dead;
             this.eaten = eaten;
+            steps = 0;
+            deadLow = dead;
+            deadHigh = dead;
+            eatenLow = eaten;
+            eatenHigh = eaten;
+        }
+
+        public Statistics(int steps, int countDead, int countEaten) {
+            this.steps = steps;
+            dead = (double) countDead / steps;
+            eaten = (double) countEaten / steps;
+
+            double[] deadInterval = wilsonInterval(countDead, steps);
+            deadLow = deadInterval[0];
+            deadHigh = deadInterval[1];
+            double[] eatenInterval = wilsonInterval(countEaten, steps);
+            eatenLow = eatenInterval[0];
+            eatenHigh = eatenInterval[1];
+        }
+
+        public double getDeadIntervalWidth() {
+            return deadHigh - deadLow;
+        }
+
+        public double getEatenIntervalWidth() {
+            return eatenHigh - eatenLow;
+        }
+
+        private static double[] wilsonInterval(int count, int n) {
+            double p = (double) count / n;
+            double z2 = Z_95 * Z_95;
+            double denominator = 1 + z2 / n;
+            double center = (p + z2 / (2 * n)) / denominator;
+            double halfWidth = Z_95 * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n)) / denominator;
+            return new double[] { Math.max(0, center - halfWidth), Math.min(1, center + halfWidth) };
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statistics{steps=%d, dead=%.4f [%.4f, %.4f], eaten=%.4f [%.4f, %.4f]}", steps, dead, deadLow, deadHigh, eaten, eatenLow, eatenHigh);
         }
     }
 
@@ -451,9 +1287,29 @@ public class DeeplearningSnakeController implements SnakeController {
         Sgd
     }
 
+    public enum FeatureEncoding {
+        Window,
+        EgocentricWindow,
+        Rays,
+        Occupancy
+    }
+
     public static class DeeplearningConfiguration {
+        public FeatureEncoding featureEncoding = FeatureEncoding.Window;
         public int inputWidth = 5;
 
+        // data-parallel training with ParallelWrapper if more than 1 worker
+        public int parallelWorkers = 0;
+        public int averagingFrequency = 3;
+        public int parallelPrefetch = 2;
+
+        // every controller and fork caches the model output for 2^inferenceCacheBits observations if positive, see setInferenceCache()
+        public int inferenceCacheBits = 0;
+
+        // the forks evaluate their moves together in batches of up to inferenceBatchSize if positive, see setInferenceBatching()
+        public int inferenceBatchSize = 0;
+        public long inferenceBatchDelayMicros = 200;
+
         public Activation defaultActivation = Activation.RELU;
         public WeightInit defaultWeightInit = WeightInit.XAVIER;
 
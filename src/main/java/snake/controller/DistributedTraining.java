@@ -0,0 +1,296 @@
+package snake.controller;
+
+import com.google.gson.Gson;
+import snake.wall.RandomCompositeWallBuilder;
+import snake.wall.WallBuilder;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trains one network with several worker processes that average their parameters through a coordinator over a local socket.
+ *
+ * Every round the coordinator sends the current parameters to all workers,
+ * every worker trains its copy for a number of iterations on its own self-play data and sends the parameters back,
+ * and the coordinator averages them.
+ * Only the parameters are averaged, every worker keeps its own updater state.
+ * At the end the coordinator sends the averaged parameters to all workers, checks that every worker ends up with the same parameters
+ * and saves the averaged network with {@link DeeplearningSnakeController#save()}.
+ *
+ * The coordinator fails with an {@link IOException} if a worker does not connect within {@link #CONNECT_TIMEOUT_MILLIS}
+ * or does not answer a round within {@link #ROUND_TIMEOUT_MILLIS}, instead of waiting forever for a crashed worker.
+ */
+public class DistributedTraining {
+    private static final int COMMAND_ROUND = 1;
+    private static final int COMMAND_STOP = 2;
+
+    static final long CONNECT_TIMEOUT_MILLIS = 60_000;
+    static final long ROUND_TIMEOUT_MILLIS = 30 * 60_000;
+
+    /**
+     * Waits for workerCount workers to connect and trains the network with the specified name for the specified time.
+     */
+    public static void coordinate(String name, int port, int workerCount, int iterationsPerRound, long seconds) throws IOException {
+        coordinate(name, new ServerSocket(port, workerCount, InetAddress.getLoopbackAddress()), workerCount, iterationsPerRound, seconds, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Coordinates like {@link #coordinate(String, int, int, int, long)} on an already bound server socket, which is closed when all workers connected,
+     * for at most maxRounds rounds and returns the averaged parameters.
+     */
+    private static float[] coordinate(String name, ServerSocket boundServerSocket, int workerCount, int iterationsPerRound, long seconds, int maxRounds) throws IOException {
+        DeeplearningSnakeController controller = DeeplearningSnakeController.create(name);
+        String configurationJson = new Gson().toJson(controller.getDeeplearningConfiguration());
+        SplittableRandom random = new SplittableRandom();
+
+        List<Socket> sockets = new ArrayList<>();
+        List<DataInputStream> inputs = new ArrayList<>();
+        List<DataOutputStream> outputs = new ArrayList<>();
+        try (ServerSocket serverSocket = boundServerSocket) {
+            System.out.println("Coordinator waiting for " + workerCount + " workers on port " + serverSocket.getLocalPort());
+            serverSocket.setSoTimeout((int) CONNECT_TIMEOUT_MILLIS);
+            while (sockets.size() < workerCount) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    for (Socket connected : sockets) {
+                        connected.close();
+                    }
+                    throw new IOException("Only " + sockets.size() + " of " + workerCount + " workers connected within " + CONNECT_TIMEOUT_MILLIS / 1000 + " s", e);
+                }
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout((int) ROUND_TIMEOUT_MILLIS);
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                output.writeUTF(name);
+                output.writeUTF(configurationJson);
+                output.writeLong(random.nextLong());
+                output.writeInt(iterationsPerRound);
+                output.flush();
+
+                sockets.add(socket);
+                inputs.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+                outputs.add(output);
+                System.out.println("Worker " + sockets.size() + " connected from " + socket.getRemoteSocketAddress());
+            }
+        }
+
+        try {
+            float[] parameters = controller.getParameters();
+            float[] sum = new float[parameters.length];
+            long endMillis = System.currentTimeMillis() + seconds * 1000;
+            int round = 0;
+            do {
+                for (DataOutputStream output : outputs) {
+                    output.writeInt(COMMAND_ROUND);
+                    writeFloats(output, parameters);
+                    output.flush();
+                }
+
+                double scoreSum = 0;
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] = 0;
+                }
+                round++;
+                for (int worker = 0; worker < inputs.size(); worker++) {
+                    DataInputStream input = inputs.get(worker);
+                    try {
+                        scoreSum += input.readDouble();
+                        float[] workerParameters = readFloats(input);
+                        for (int i = 0; i < sum.length; i++) {
+                            sum[i] += workerParameters[i];
+                        }
+                    } catch (IOException e) {
+                        throw workerFailed(worker, "round " + round, e);
+                    }
+                }
+                for (int i = 0; i < sum.length; i++) {
+                    parameters[i] = sum[i] / workerCount;
+                }
+
+                System.out.println("Round: " + round + " Score: " + scoreSum / workerCount);
+            } while (round < maxRounds && System.currentTimeMillis() < endMillis);
+
+            for (DataOutputStream output : outputs) {
+                output.writeInt(COMMAND_STOP);
+                writeFloats(output, parameters);
+                output.flush();
+            }
+            for (int worker = 0; worker < inputs.size(); worker++) {
+                float[] workerParameters;
+                try {
+                    workerParameters = readFloats(inputs.get(worker));
+                } catch (IOException e) {
+                    throw workerFailed(worker, "the last round", e);
+                }
+                if (!Arrays.equals(parameters, workerParameters)) {
+                    throw new IOException("Worker " + (worker + 1) + " has other parameters than the coordinator after the last round");
+                }
+            }
+
+            controller.setParameters(parameters);
+            controller.save();
+            return parameters;
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private static IOException workerFailed(int worker, String what, IOException cause) {
+        if (cause instanceof SocketTimeoutException) {
+            return new IOException("Worker " + (worker + 1) + " did not answer " + what + " within " + ROUND_TIMEOUT_MILLIS / 1000 + " s", cause);
+        }
+        if (cause instanceof EOFException) {
+            return new IOException("Worker " + (worker + 1) + " closed the connection in " + what, cause);
+        }
+        return new IOException("Worker " + (worker + 1) + " failed in " + what, cause);
+    }
+
+    /**
+     * Connects to the coordinator and trains rounds until the coordinator stops.
+     */
+    public static void work(String host, int port, SnakeController teacher) throws IOException {
+        work(host, port, teacher, 0);
+    }
+
+    /**
+     * Works like {@link #work(String, int, SnakeController)} with the specified number of generator threads, 0 for the default.
+     */
+    public static void work(String host, int port, SnakeController teacher, int generatorThreads) throws IOException {
+        try (Socket socket = connect(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            String name = input.readUTF();
+            DeeplearningSnakeController.DeeplearningConfiguration deeplearningConfiguration = new Gson().fromJson(input.readUTF(), DeeplearningSnakeController.DeeplearningConfiguration.class);
+            SplittableRandom random = new SplittableRandom(input.readLong());
+            int iterationsPerRound = input.readInt();
+
+            DeeplearningSnakeController controller = DeeplearningSnakeController.create(name, deeplearningConfiguration, random.split());
+            if (generatorThreads > 0) {
+                controller.setGeneratorThreads(generatorThreads);
+            }
+            if (teacher == null) {
+                teacher = controller;
+            } else {
+                teacher = teacher.fork(random.split());
+            }
+            WallBuilder wallBuilder = new RandomCompositeWallBuilder();
+
+            try {
+                while (input.readInt() == COMMAND_ROUND) {
+                    controller.setParameters(readFloats(input));
+                    double score = controller.train(iterationsPerRound, teacher, wallBuilder);
+
+                    output.writeDouble(score);
+                    writeFloats(output, controller.getParameters());
+                    output.flush();
+                }
+
+                // the final averaged parameters, sent back so that the coordinator can check that all workers agree
+                controller.setParameters(readFloats(input));
+                writeFloats(output, controller.getParameters());
+                output.flush();
+            } finally {
+                controller.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Runs a coordinator in this process and workerCount worker processes on this machine.
+     *
+     * The processors are split between the workers: every worker gets availableProcessors / workerCount generator threads
+     * and native ND4J threads (at least 1).
+     */
+    public static void runLocal(String name, int workerCount, int iterationsPerRound, long seconds) throws IOException, InterruptedException {
+        runLocal(name, workerCount, iterationsPerRound, seconds, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs locally like {@link #runLocal(String, int, int, long)} for at most maxRounds rounds and returns the averaged parameters.
+     */
+    static float[] runLocal(String name, int workerCount, int iterationsPerRound, long seconds, int maxRounds) throws IOException, InterruptedException {
+        // bound before the workers start, so that they connect to this socket and no other process can take the port in between
+        ServerSocket serverSocket = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+        int port = serverSocket.getLocalPort();
+        int workerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / workerCount);
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                ProcessBuilder processBuilder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), DeeplearningSnakeController.class.getName(),
+                        "worker", InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(port), String.valueOf(workerThreads));
+                processBuilder.environment().put("OMP_NUM_THREADS", String.valueOf(workerThreads));
+                processBuilder.inheritIO();
+                processes.add(processBuilder.start());
+            }
+        } catch (IOException e) {
+            serverSocket.close();
+            for (Process process : processes) {
+                process.destroy();
+            }
+            throw e;
+        }
+
+        try {
+            return coordinate(name, serverSocket, workerCount, iterationsPerRound, seconds, maxRounds);
+        } finally {
+            for (Process process : processes) {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            }
+        }
+    }
+
+    // the coordinator might not listen yet
+    private static Socket connect(String host, int port) throws IOException {
+        long endMillis = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > endMillis) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void writeFloats(DataOutputStream output, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        buffer.asFloatBuffer().put(values);
+        output.writeInt(values.length);
+        output.write(buffer.array());
+    }
+
+    private static float[] readFloats(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        byte[] bytes = new byte[length * 4];
+        input.readFully(bytes);
+        float[] values = new float[length];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+}
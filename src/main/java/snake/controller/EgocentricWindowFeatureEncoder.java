@@ -0,0 +1,69 @@
+package snake.controller;
+
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+
+/**
+ * Encodes the square window around the head and the apple direction rotated so that the snake always looks up.
+ *
+ * The network only has to learn the situations of one heading, the predicted moves are relative to the heading.
+ */
+public class EgocentricWindowFeatureEncoder implements FeatureEncoder {
+    private final int inputWidth;
+
+    public EgocentricWindowFeatureEncoder(int inputWidth) {
+        this.inputWidth = inputWidth;
+    }
+
+    @Override
+    public int getInputCount() {
+        return inputWidth * inputWidth + 2;
+    }
+
+    @Override
+    public int getRotation(Snake snake) {
+        int dX = snake.getX(0) - snake.getX(1);
+        int dY = snake.getY(0) - snake.getY(1);
+        if (dX > 0) {
+            return 3;
+        } else if (dX < 0) {
+            return 1;
+        } else if (dY > 0) {
+            return 2;
+        }
+        return 0;
+    }
+
+    @Override
+    public void encode(Snake snake, SnakeMap snakeMap, float[] input, int offset) {
+        int x = snake.getX(0);
+        int y = snake.getY(0);
+        int rotation = getRotation(snake);
+
+        int inputRadius = inputWidth / 2;
+        for (int inputY = 0; inputY < inputWidth; inputY++) {
+            for (int inputX = 0; inputX < inputWidth; inputX++) {
+                // rotate the window offset back into the map (counterclockwise)
+                int dX = inputX - inputRadius;
+                int dY = inputY - inputRadius;
+                for (int i = 0; i < rotation; i++) {
+                    int tmp = dX;
+                    dX = dY;
+                    dY = -tmp;
+                }
+                input[offset + inputX + inputY * inputWidth] = WindowFeatureEncoder.tileToInput[snakeMap.get(x + dX, y + dY).ordinal()];
+            }
+        }
+
+        float appleX = (float) (snakeMap.getAppleX() - x) / snakeMap.width;
+        float appleY = (float) (snakeMap.getAppleY() - y) / snakeMap.height;
+        for (int i = 0; i < rotation; i++) {
+            float tmp = appleX;
+            appleX = -appleY;
+            appleY = tmp;
+        }
+        int inputCount = getInputCount();
+        input[offset + inputCount - 2] = appleX;
+        input[offset + inputCount - 1] = appleY;
+    }
+}
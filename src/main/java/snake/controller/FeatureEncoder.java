@@ -0,0 +1,34 @@
+package snake.controller;
+
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+
+/**
+ * Encodes what the snake sees into the input features of the network.
+ *
+ * The last two features of every encoding are the direction to the apple relative to the board size,
+ * the inference cache quantizes them.
+ */
+public interface FeatureEncoder {
+    int getInputCount();
+
+    /**
+     * Returns the number of clockwise quarter turns from the map to the frame of the encoding.
+     * The moves predicted by the network are relative to this frame.
+     */
+    default int getRotation(Snake snake) {
+        return 0;
+    }
+
+    /**
+     * Returns the number of leading features that are always 0 or 1, so that the inference cache can pack them into its key as bits.
+     */
+    default int getBinaryInputCount() {
+        return 0;
+    }
+
+    /**
+     * Writes {@link #getInputCount()} features into input starting at offset.
+     */
+    void encode(Snake snake, SnakeMap snakeMap, float[] input, int offset);
+}
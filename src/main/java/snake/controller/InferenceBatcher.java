@@ -0,0 +1,198 @@
+package snake.controller;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Collects single-row inference requests from many threads and evaluates them with one {@code model.output} call per batch.
+ *
+ * The first caller of a batch waits until the batch is full or the deadline has passed and then runs the model for everybody,
+ * so the latency of a single request is bounded by the deadline plus one model call.
+ *
+ * The batches are evaluated with a copy of the model, which copies the parameters supplied by the trainer before a batch
+ * whenever they were replaced since, so requests can be evaluated while the model is fitted on another thread.
+ */
+public class InferenceBatcher {
+    private static final String WORKSPACE_ID = "SNAKE_BATCH_INFERENCE";
+    private static final WorkspaceConfiguration WORKSPACE = WorkspaceConfiguration.builder()
+            .policyAllocation(AllocationPolicy.STRICT)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .build();
+
+    private final Supplier<INDArray> parameters;
+    private final int inputCount;
+    private final int outputCount;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchClosed = lock.newCondition();
+    private final Condition batchDone = lock.newCondition();
+    private final Object modelLock = new Object();
+
+    // guarded by modelLock
+    private final MultiLayerNetwork model;
+    private INDArray modelParameters;
+
+    private final ArrayDeque<Batch> freeBatches = new ArrayDeque<>();
+    private Batch openBatch;
+
+    // only changed under lock, read without it
+    private volatile long batchCount;
+    private volatile long requestCount;
+
+    /**
+     * @param model the model, only its configuration is used
+     * @param parameters supplies the parameters to evaluate with, a new instance whenever they changed and never modified afterwards
+     */
+    public InferenceBatcher(MultiLayerNetwork model, Supplier<INDArray> parameters, int inputCount, int outputCount, int maxBatchSize, long maxDelayMicros) {
+        this.parameters = parameters;
+        this.model = model.clone();
+        this.inputCount = inputCount;
+        this.outputCount = outputCount;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        openBatch = new Batch();
+    }
+
+    /**
+     * Evaluates the model for the input row and writes the output row, blocking until the batch containing the request has been evaluated.
+     */
+    public void output(float[] input, float[] output) {
+        Batch batch;
+        int row;
+        lock.lock();
+        try {
+            batch = openBatch;
+            row = batch.size++;
+            System.arraycopy(input, 0, batch.inputs, row * inputCount, inputCount);
+            requestCount++;
+
+            if (batch.size == maxBatchSize) {
+                closeOpenBatch();
+            }
+
+            if (row == 0) {
+                long remainingNanos = maxDelayNanos;
+                while (openBatch == batch && remainingNanos > 0) {
+                    try {
+                        remainingNanos = batchClosed.awaitNanos(remainingNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (openBatch == batch) {
+                    closeOpenBatch();
+                }
+            } else {
+                while (!batch.done) {
+                    batchDone.awaitUninterruptibly();
+                }
+                readOutput(batch, row, output);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // the first caller of the batch evaluates it outside of the lock, so that the next batch can fill up in the meantime
+        RuntimeException failure = null;
+        try {
+            evaluate(batch);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        lock.lock();
+        try {
+            batch.failure = failure;
+            batch.done = true;
+            batchCount++;
+            batchDone.signalAll();
+            readOutput(batch, row, output);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public double getAverageBatchSize() {
+        return batchCount == 0 ? 0 : (double) requestCount / batchCount;
+    }
+
+    private void closeOpenBatch() {
+        openBatch = freeBatches.isEmpty() ? new Batch() : freeBatches.pop();
+        batchClosed.signalAll();
+    }
+
+    private void readOutput(Batch batch, int row, float[] output) {
+        RuntimeException failure = batch.failure;
+        System.arraycopy(batch.outputs, row * outputCount, output, 0, outputCount);
+        batch.readCount++;
+        if (batch.readCount == batch.size) {
+            batch.size = 0;
+            batch.readCount = 0;
+            batch.done = false;
+            batch.failure = null;
+            freeBatches.push(batch);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void evaluate(Batch batch) {
+        synchronized (modelLock) {
+            INDArray currentParameters = parameters.get();
+            if (currentParameters != modelParameters) {
+                model.params().assign(currentParameters);
+                modelParameters = currentParameters;
+            }
+
+            batch.inputArray.data().setData(batch.inputs);
+            // a partially filled batch only evaluates its filled rows
+            INDArray inputArray = batch.size == maxBatchSize ? batch.inputArray : batch.inputArray.get(NDArrayIndex.interval(0, batch.size), NDArrayIndex.all());
+            try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager().getAndActivateWorkspace(WORKSPACE, WORKSPACE_ID)) {
+                INDArray outputArray = model.output(inputArray, false, workspace);
+                for (int row = 0; row < batch.size; row++) {
+                    for (int column = 0; column < outputCount; column++) {
+                        batch.outputs[row * outputCount + column] = outputArray.getFloat(row, column);
+                    }
+                }
+            }
+        }
+    }
+
+    private class Batch {
+        final float[] inputs = new float[maxBatchSize * inputCount];
+        final float[] outputs = new float[maxBatchSize * outputCount];
+        final INDArray inputArray;
+        int size;
+        int readCount;
+        boolean done;
+        RuntimeException failure;
+
+        @SuppressWarnings("try") // the workspace scope is only opened to allocate outside of the workspaces
+        Batch() {
+            try (MemoryWorkspace ignored = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                inputArray = Nd4j.create(maxBatchSize, inputCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package snake.controller;
+
+import snake.metrics.Counter;
+import snake.metrics.Metrics;
+
+/**
+ * Bounded cache of model outputs keyed by a 128 bit key computed by the caller.
+ *
+ * The cache compares only the keys, not the observations, so if the key is a hash (as in {@link DeeplearningSnakeController})
+ * two different observations with the same key return each other's output.
+ * With 128 bits this is traded for a fixed-size entry independent of the encoding.
+ *
+ * The table is 8-way set associative, every set evicts with its own CLOCK hand,
+ * so an entry that was hit since the hand last passed it gets a second chance.
+ * The hits and misses are also counted in the {@link Metrics} counters {@code <metricsName>.hits} and {@code <metricsName>.misses},
+ * which all caches with the same name share.
+ * Not thread-safe.
+ */
+public class InferenceCache {
+    private static final int WAYS = 8;
+
+    private static final byte VALID = 1;
+    private static final byte REFERENCED = 2;
+
+    private final int outputCount;
+    private final int setMask;
+
+    private final long[] keys0;
+    private final long[] keys1;
+    private final byte[] flags;
+    private final float[] outputs;
+    private final byte[] hands;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param sizeBits the cache has 2^sizeBits entries (at least 8)
+     */
+    public InferenceCache(int sizeBits, int outputCount) {
+        this(sizeBits, outputCount, "inference.cache");
+    }
+
+    /**
+     * @param sizeBits the cache has 2^sizeBits entries (at least 8)
+     * @param metricsName the prefix of the hit and miss counters
+     */
+    public InferenceCache(int sizeBits, int outputCount, String metricsName) {
+        this.outputCount = outputCount;
+        hitCounter = Metrics.counter(metricsName + ".hits");
+        missCounter = Metrics.counter(metricsName + ".misses");
+        int setCount = Math.max(1, (1 << sizeBits) / WAYS);
+        int size = setCount * WAYS;
+        setMask = setCount - 1;
+
+        keys0 = new long[size];
+        keys1 = new long[size];
+        flags = new byte[size];
+        outputs = new float[size * outputCount];
+        hands = new byte[setCount];
+    }
+
+    /**
+     * Copies the cached output for the key into output and returns true, or returns false if the key is not cached.
+     */
+    public boolean get(long key0, long key1, float[] output) {
+        int first = firstSlot(key0, key1);
+        for (int slot = first; slot < first + WAYS; slot++) {
+            if (flags[slot] != 0 && keys0[slot] == key0 && keys1[slot] == key1) {
+                flags[slot] |= REFERENCED;
+                System.arraycopy(outputs, slot * outputCount, output, 0, outputCount);
+                hitCount++;
+                hitCounter.increment();
+                return true;
+            }
+        }
+        missCount++;
+        missCounter.increment();
+        return false;
+    }
+
+    /**
+     * Stores the output for a key that is not cached yet.
+     */
+    public void put(long key0, long key1, float[] output) {
+        int set = set(key0, key1);
+        int first = set * WAYS;
+
+        int slot = -1;
+        for (int i = first; i < first + WAYS; i++) {
+            if (flags[i] == 0) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot < 0) {
+            int hand = hands[set];
+            while ((flags[first + hand] & REFERENCED) != 0) {
+                flags[first + hand] = VALID;
+                hand = (hand + 1) % WAYS;
+            }
+            slot = first + hand;
+            hands[set] = (byte) ((hand + 1) % WAYS);
+        }
+
+        keys0[slot] = key0;
+        keys1[slot] = key1;
+        flags[slot] = VALID;
+        System.arraycopy(output, 0, outputs, slot * outputCount, outputCount);
+    }
+
+    /**
+     * Removes all entries, the hit and miss counts are kept.
+     */
+    public void clear() {
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = 0;
+        }
+    }
+
+    public int getSize() {
+        return flags.length;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private int firstSlot(long key0, long key1) {
+        return set(key0, key1) * WAYS;
+    }
+
+    private int set(long key0, long key1) {
+        long hash = (key0 ^ (key1 * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ (hash >>> 32)) & setMask;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InferenceCache{size=%d, hits=%d, misses=%d, hitRate=%.3f}", getSize(), hitCount, missCount, getHitRate());
+    }
+}
@@ -3,42 +3,55 @@ package snake.controller;
 import snake.domain.Move;
 import snake.domain.Snake;
 import snake.domain.SnakeMap;
-import snake.domain.Tile;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class LookaheadRandomSnakeController implements SnakeController {
-    private final Random random = new Random();
-    private Move lastMove = randomMove();
+    private static final Move[] MOVES = Move.values();
+
+    private final SplittableRandom random;
+    private Move lastMove;
+
+    public LookaheadRandomSnakeController() {
+        this(new SplittableRandom());
+    }
+
+    public LookaheadRandomSnakeController(SplittableRandom random) {
+        this.random = random;
+        lastMove = randomMove();
+    }
 
     @Override
     public Move getMove(Snake snake, SnakeMap snakeMap) {
         int x = snake.getX(0);
         int y = snake.getY(0);
 
-        List<Move> validMoves = new ArrayList<>();
-        for (Move move : Move.values()) {
-            Tile targetTile = snakeMap.get(x + move.dX, y + move.dY);
-            if (Tile.isValidMove(targetTile)) {
-                validMoves.add(move);
-            }
-        }
+        int validMoveMask = snakeMap.getValidMoveMask(x, y);
+        int validMoveCount = Integer.bitCount(validMoveMask);
 
-        if (validMoves.isEmpty()) {
+        if (validMoveCount == 0) {
             return Move.Up;
         }
 
-        if (validMoves.contains(lastMove) && random.nextInt(100) < 80) {
+        if ((validMoveMask & (1 << lastMove.ordinal())) != 0 && random.nextInt(100) < 80) {
             return lastMove;
         }
 
-        int r = random.nextInt(validMoves.size());
-        lastMove = validMoves.get(r);
+        int r = random.nextInt(validMoveCount);
+        for (Move move : MOVES) {
+            if ((validMoveMask & (1 << move.ordinal())) != 0 && r-- == 0) {
+                lastMove = move;
+                break;
+            }
+        }
         return lastMove;
     }
 
+    @Override
+    public SnakeController fork(SplittableRandom random) {
+        return new LookaheadRandomSnakeController(random);
+    }
+
     private Move randomMove() {
         Move[] values = Move.values();
         int index = random.nextInt(values.length);
@@ -0,0 +1,227 @@
+package snake.controller;
+
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.*;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Evaluates small networks of dense layers in plain Java, avoiding the per-call overhead of {@code MultiLayerNetwork.output}.
+ *
+ * The weights are copied out of the network when the engine is created,
+ * so the engine must be recreated after the network was trained (see {@link #isCurrent(MultiLayerNetwork)}).
+ * An engine is not thread-safe.
+ */
+class MlpInferenceEngine {
+    private enum ActivationFunction {
+        Identity,
+        Relu,
+        LeakyRelu,
+        Tanh,
+        Sigmoid,
+        Softmax
+    }
+
+    private final int layerCount;
+    private final int[] inputSizes;
+    private final int[] outputSizes;
+    // per layer: weights[layer][outputIndex * inputSize + inputIndex]
+    private final float[][] weights;
+    private final float[][] biases;
+    private final ActivationFunction[] activationFunctions;
+    private final double[] alphas;
+
+    private final float[][] activations;
+
+    private final int iterationCount;
+    private final int epochCount;
+
+    private MlpInferenceEngine(int layerCount, int iterationCount, int epochCount) {
+        this.layerCount = layerCount;
+        inputSizes = new int[layerCount];
+        outputSizes = new int[layerCount];
+        weights = new float[layerCount][];
+        biases = new float[layerCount][];
+        activationFunctions = new ActivationFunction[layerCount];
+        alphas = new double[layerCount];
+        activations = new float[layerCount][];
+        this.iterationCount = iterationCount;
+        this.epochCount = epochCount;
+    }
+
+    /**
+     * Returns whether the engine supports the layers, preprocessors and activations of the network, without copying any weights.
+     */
+    static boolean supports(MultiLayerNetwork model) {
+        if (!model.getLayerWiseConfigurations().getInputPreProcessors().isEmpty()) {
+            return false;
+        }
+
+        long previousOutputSize = -1;
+        for (int layerIndex = 0; layerIndex < model.getnLayers(); layerIndex++) {
+            Layer layer = model.getLayer(layerIndex);
+            org.deeplearning4j.nn.conf.layers.Layer layerConf = layer.conf().getLayer();
+            if (!(layerConf instanceof DenseLayer || layerConf instanceof OutputLayer)) {
+                return false;
+            }
+            if (toActivationFunction(((BaseLayer) layerConf).getActivationFn()) == null) {
+                return false;
+            }
+
+            INDArray w = layer.getParam("W");
+            if (layerIndex > 0 && w.size(0) != previousOutputSize) {
+                return false;
+            }
+            previousOutputSize = w.size(1);
+        }
+        return true;
+    }
+
+    /**
+     * Creates an engine with a copy of the current weights, or returns null if the network is not {@link #supports(MultiLayerNetwork) supported}.
+     */
+    static MlpInferenceEngine create(MultiLayerNetwork model) {
+        if (!supports(model)) {
+            return null;
+        }
+
+        int layerCount = model.getnLayers();
+        MlpInferenceEngine engine = new MlpInferenceEngine(layerCount, model.getIterationCount(), model.getEpochCount());
+        for (int layerIndex = 0; layerIndex < layerCount; layerIndex++) {
+            Layer layer = model.getLayer(layerIndex);
+            IActivation activation = ((BaseLayer) layer.conf().getLayer()).getActivationFn();
+            engine.activationFunctions[layerIndex] = toActivationFunction(activation);
+            if (activation instanceof ActivationLReLU) {
+                engine.alphas[layerIndex] = ((ActivationLReLU) activation).getAlpha();
+            }
+
+            INDArray w = layer.getParam("W");
+            INDArray b = layer.getParam("b");
+            int inputSize = (int) w.size(0);
+            int outputSize = (int) w.size(1);
+
+            float[] layerWeights = new float[inputSize * outputSize];
+            float[] layerBiases = new float[outputSize];
+            for (int outputIndex = 0; outputIndex < outputSize; outputIndex++) {
+                for (int inputIndex = 0; inputIndex < inputSize; inputIndex++) {
+                    layerWeights[outputIndex * inputSize + inputIndex] = w.getFloat(inputIndex, outputIndex);
+                }
+                layerBiases[outputIndex] = b.getFloat(outputIndex);
+            }
+
+            engine.inputSizes[layerIndex] = inputSize;
+            engine.outputSizes[layerIndex] = outputSize;
+            engine.weights[layerIndex] = layerWeights;
+            engine.biases[layerIndex] = layerBiases;
+            engine.activations[layerIndex] = new float[outputSize];
+        }
+        return engine;
+    }
+
+    // null if the activation is not supported
+    private static ActivationFunction toActivationFunction(IActivation activation) {
+        if (activation instanceof ActivationIdentity) {
+            return ActivationFunction.Identity;
+        } else if (activation instanceof ActivationReLU) {
+            return ActivationFunction.Relu;
+        } else if (activation instanceof ActivationLReLU) {
+            return ActivationFunction.LeakyRelu;
+        } else if (activation instanceof ActivationTanH) {
+            return ActivationFunction.Tanh;
+        } else if (activation instanceof ActivationSigmoid) {
+            return ActivationFunction.Sigmoid;
+        } else if (activation instanceof ActivationSoftmax) {
+            return ActivationFunction.Softmax;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the weights of the engine are still those of the network (the network has not been trained since).
+     */
+    boolean isCurrent(MultiLayerNetwork model) {
+        return model.getIterationCount() == iterationCount && model.getEpochCount() == epochCount;
+    }
+
+    int getInputCount() {
+        return inputSizes[0];
+    }
+
+    int getOutputCount() {
+        return outputSizes[layerCount - 1];
+    }
+
+    void output(float[] input, int inputOffset, float[] output, int outputOffset) {
+        float[] layerInput = input;
+        int layerInputOffset = inputOffset;
+        for (int layerIndex = 0; layerIndex < layerCount; layerIndex++) {
+            int inputSize = inputSizes[layerIndex];
+            int outputSize = outputSizes[layerIndex];
+            float[] layerWeights = weights[layerIndex];
+            float[] layerBiases = biases[layerIndex];
+            float[] layerOutput = activations[layerIndex];
+
+            for (int outputIndex = 0; outputIndex < outputSize; outputIndex++) {
+                int weightOffset = outputIndex * inputSize;
+                float sum = layerBiases[outputIndex];
+                for (int inputIndex = 0; inputIndex < inputSize; inputIndex++) {
+                    sum += layerInput[layerInputOffset + inputIndex] * layerWeights[weightOffset + inputIndex];
+                }
+                layerOutput[outputIndex] = sum;
+            }
+            activate(activationFunctions[layerIndex], alphas[layerIndex], layerOutput, outputSize);
+
+            layerInput = layerOutput;
+            layerInputOffset = 0;
+        }
+
+        System.arraycopy(layerInput, 0, output, outputOffset, getOutputCount());
+    }
+
+    private static void activate(ActivationFunction activationFunction, double alpha, float[] values, int count) {
+        switch (activationFunction) {
+            case Identity:
+                return;
+            case Relu:
+                for (int i = 0; i < count; i++) {
+                    values[i] = Math.max(0, values[i]);
+                }
+                return;
+            case LeakyRelu:
+                for (int i = 0; i < count; i++) {
+                    values[i] = values[i] < 0 ? (float) (values[i] * alpha) : values[i];
+                }
+                return;
+            case Tanh:
+                for (int i = 0; i < count; i++) {
+                    values[i] = (float) Math.tanh(values[i]);
+                }
+                return;
+            case Sigmoid:
+                for (int i = 0; i < count; i++) {
+                    values[i] = (float) (1.0 / (1.0 + Math.exp(-values[i])));
+                }
+                return;
+            case Softmax:
+                float max = Float.NEGATIVE_INFINITY;
+                for (int i = 0; i < count; i++) {
+                    max = Math.max(max, values[i]);
+                }
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    double value = Math.exp(values[i] - max);
+                    values[i] = (float) value;
+                    sum += value;
+                }
+                for (int i = 0; i < count; i++) {
+                    values[i] = (float) (values[i] / sum);
+                }
+                return;
+        }
+        throw new RuntimeException("Unknown: " + activationFunction);
+    }
+}
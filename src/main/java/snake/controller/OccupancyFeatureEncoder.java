@@ -0,0 +1,46 @@
+package snake.controller;
+
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+import snake.domain.Tile;
+
+/**
+ * Encodes the square window around the head as one occupancy bit per tile (1 if the snake cannot move there) and the apple direction.
+ *
+ * The network gets every bit as its own 0/1 input, the inference cache packs them into its key (see {@link #getBinaryInputCount()}).
+ */
+public class OccupancyFeatureEncoder implements FeatureEncoder {
+    private final int inputWidth;
+
+    public OccupancyFeatureEncoder(int inputWidth) {
+        this.inputWidth = inputWidth;
+    }
+
+    @Override
+    public int getInputCount() {
+        return inputWidth * inputWidth + 2;
+    }
+
+    @Override
+    public int getBinaryInputCount() {
+        return inputWidth * inputWidth;
+    }
+
+    @Override
+    public void encode(Snake snake, SnakeMap snakeMap, float[] input, int offset) {
+        int x = snake.getX(0);
+        int y = snake.getY(0);
+
+        int inputRadius = inputWidth / 2;
+        for (int inputY = 0; inputY < inputWidth; inputY++) {
+            for (int inputX = 0; inputX < inputWidth; inputX++) {
+                boolean free = Tile.isValidMove(snakeMap.get(x + (inputX - inputRadius), y + (inputY - inputRadius)));
+                input[offset + inputX + inputY * inputWidth] = free ? 0.0f : 1.0f;
+            }
+        }
+
+        int inputCount = getInputCount();
+        input[offset + inputCount - 2] = (float) (snakeMap.getAppleX() - x) / snakeMap.width;
+        input[offset + inputCount - 1] = (float) (snakeMap.getAppleY() - y) / snakeMap.height;
+    }
+}
@@ -4,16 +4,29 @@ import snake.domain.Move;
 import snake.domain.Snake;
 import snake.domain.SnakeMap;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class RandomSnakeController implements SnakeController {
-    private final Random random = new Random();
+    private final SplittableRandom random;
+
+    public RandomSnakeController() {
+        this(new SplittableRandom());
+    }
+
+    public RandomSnakeController(SplittableRandom random) {
+        this.random = random;
+    }
 
     @Override
     public Move getMove(Snake snake, SnakeMap snakeMap) {
         return randomMove();
     }
 
+    @Override
+    public SnakeController fork(SplittableRandom random) {
+        return new RandomSnakeController(random);
+    }
+
     private Move randomMove() {
         Move[] values = Move.values();
         int index = random.nextInt(values.length);
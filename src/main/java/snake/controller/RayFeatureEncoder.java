@@ -0,0 +1,46 @@
+package snake.controller;
+
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+import snake.domain.Tile;
+
+/**
+ * Encodes what the snake sees along 8 rays from the head (inverse distance to the first obstacle and whether the apple is on the ray)
+ * and the apple direction.
+ *
+ * The input count does not depend on the size of the view, so the network stays small.
+ */
+public class RayFeatureEncoder implements FeatureEncoder {
+    private static final int[] RAY_DX = { 0, 1, 1, 1, 0, -1, -1, -1 };
+    private static final int[] RAY_DY = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+    @Override
+    public int getInputCount() {
+        return RAY_DX.length * 2 + 2;
+    }
+
+    @Override
+    public void encode(Snake snake, SnakeMap snakeMap, float[] input, int offset) {
+        int x = snake.getX(0);
+        int y = snake.getY(0);
+
+        for (int ray = 0; ray < RAY_DX.length; ray++) {
+            int dX = RAY_DX[ray];
+            int dY = RAY_DY[ray];
+            boolean apple = false;
+            int distance = 1;
+            Tile tile = snakeMap.get(x + dX, y + dY);
+            while (Tile.isValidMove(tile)) {
+                apple |= tile == Tile.Apple;
+                distance++;
+                tile = snakeMap.get(x + dX * distance, y + dY * distance);
+            }
+            input[offset + ray * 2] = 1.0f / distance;
+            input[offset + ray * 2 + 1] = apple ? 1.0f : 0.0f;
+        }
+
+        int inputCount = getInputCount();
+        input[offset + inputCount - 2] = (float) (snakeMap.getAppleX() - x) / snakeMap.width;
+        input[offset + inputCount - 1] = (float) (snakeMap.getAppleY() - y) / snakeMap.height;
+    }
+}
@@ -0,0 +1,50 @@
+package snake.controller;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of training samples (input features and move label) in primitive arrays, reused between batches.
+ */
+class SampleBuffer {
+    final int inputCount;
+
+    float[] features;
+    int[] labels;
+    private int size;
+
+    SampleBuffer(int inputCount, int capacity) {
+        this.inputCount = inputCount;
+        features = new float[capacity * inputCount];
+        labels = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Makes room for the next sample and returns the offset of its features.
+     */
+    int nextFeaturesOffset() {
+        if (size >= labels.length) {
+            labels = Arrays.copyOf(labels, labels.length * 2);
+            features = Arrays.copyOf(features, labels.length * inputCount);
+        }
+        return size * inputCount;
+    }
+
+    /**
+     * Adds the sample whose features were written at {@link #nextFeaturesOffset()}.
+     */
+    void add(int label) {
+        labels[size++] = label;
+    }
+}
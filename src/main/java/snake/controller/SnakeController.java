@@ -4,7 +4,24 @@ import snake.domain.Move;
 import snake.domain.Snake;
 import snake.domain.SnakeMap;
 
+import java.util.SplittableRandom;
+
 public interface SnakeController {
 
     Move getMove(Snake snake, SnakeMap snakeMap);
+
+    /**
+     * Returns a controller with the same behaviour for use by another worker, drawing its random numbers from the specified generator.
+     * Controllers without state can return themselves.
+     */
+    default SnakeController fork(SplittableRandom random) {
+        return this;
+    }
+
+    /**
+     * Brings a controller returned by {@link #fork(SplittableRandom)} up to date with this controller, so that a fork can be reused.
+     * Controllers without state do nothing.
+     */
+    default void updateFork(SnakeController fork) {
+    }
 }
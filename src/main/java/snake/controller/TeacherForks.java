@@ -0,0 +1,43 @@
+package snake.controller;
+
+import java.util.SplittableRandom;
+
+/**
+ * The forks of a teacher used by the generator workers, one per worker.
+ *
+ * The forks are created once and reused for every minibatch, {@link #update()} brings them up to date with the teacher
+ * (see {@link SnakeController#updateFork(SnakeController)}) instead of forking the teacher again.
+ */
+class TeacherForks {
+    private final SnakeController teacher;
+    private final SnakeController[] forks;
+
+    TeacherForks(SnakeController teacher, int workerCount, SplittableRandom random) {
+        this.teacher = teacher;
+        forks = new SnakeController[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            forks[i] = teacher.fork(random.split());
+        }
+    }
+
+    boolean isFor(SnakeController teacher, int workerCount) {
+        return this.teacher == teacher && forks.length == workerCount;
+    }
+
+    int getWorkerCount() {
+        return forks.length;
+    }
+
+    /**
+     * Updates the forks to the current state of the teacher, must not be called while the forks are used.
+     */
+    void update() {
+        for (SnakeController fork : forks) {
+            teacher.updateFork(fork);
+        }
+    }
+
+    SnakeController get(int worker) {
+        return forks[worker];
+    }
+}
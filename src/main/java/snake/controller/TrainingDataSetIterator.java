@@ -0,0 +1,174 @@
+package snake.controller;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import snake.wall.WallBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams self-play training minibatches to {@code model.fit(iterator)}.
+ *
+ * The samples are generated into per-worker {@link SampleBuffer}s and copied into the same preallocated feature and label arrays for every batch,
+ * so the returned {@link DataSet} is only valid until the next call to {@link #next()} and asynchronous prefetching is not supported.
+ * A detached iterator returns a new {@link DataSet} for every batch instead, as needed by data-parallel training.
+ * With a {@link TrainingPipeline} the minibatches are taken from the pipeline instead of being generated on the calling thread.
+ */
+class TrainingDataSetIterator implements DataSetIterator {
+    private final DeeplearningSnakeController controller;
+    private final int inputCount;
+    private final int outputCount;
+    private final int batchSize;
+    private final boolean detached;
+
+    private final float[] featuresData;
+    private final float[] labelsData;
+    private final INDArray features;
+    private final INDArray labels;
+    private final DataSet dataSet;
+
+    private SampleBuffer[] sampleBuffers = new SampleBuffer[0];
+
+    private SnakeController teacher;
+    private TeacherForks teachers;
+    private WallBuilder wallBuilder;
+    private TrainingPipeline pipeline;
+    private int batchCount;
+    private int batchIndex;
+
+    private DataSetPreProcessor preProcessor;
+
+    TrainingDataSetIterator(DeeplearningSnakeController controller, int inputCount, int outputCount, int batchSize, boolean detached) {
+        this.controller = controller;
+        this.inputCount = inputCount;
+        this.outputCount = outputCount;
+        this.batchSize = batchSize;
+        this.detached = detached;
+
+        featuresData = new float[batchSize * inputCount];
+        labelsData = new float[batchSize * outputCount];
+        features = Nd4j.create(batchSize, inputCount);
+        labels = Nd4j.create(batchSize, outputCount);
+        dataSet = new DataSet(features, labels);
+    }
+
+    boolean isDetached() {
+        return detached;
+    }
+
+    void prepare(SnakeController teacher, WallBuilder wallBuilder, TrainingPipeline pipeline, int batchCount) {
+        this.teacher = teacher;
+        this.wallBuilder = wallBuilder;
+        this.pipeline = pipeline;
+        this.batchCount = batchCount;
+        batchIndex = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return batchIndex < batchCount;
+    }
+
+    @Override
+    public DataSet next() {
+        batchIndex++;
+
+        if (pipeline != null) {
+            pipeline.take(featuresData, labelsData);
+        } else {
+            int workerCount = Math.max(1, controller.getGeneratorThreads());
+            if (sampleBuffers.length != workerCount) {
+                sampleBuffers = new SampleBuffer[workerCount];
+                for (int i = 0; i < workerCount; i++) {
+                    sampleBuffers[i] = new SampleBuffer(inputCount, batchSize / workerCount + 100);
+                }
+            }
+            teachers = controller.getTeacherForks(teachers, teacher, workerCount);
+            controller.generateSamples(teachers, wallBuilder, sampleBuffers, batchSize);
+            fill(sampleBuffers, featuresData, labelsData, inputCount, outputCount, batchSize);
+        }
+        DataSet result;
+        if (detached) {
+            result = new DataSet(Nd4j.create(featuresData, new int[] { batchSize, inputCount }), Nd4j.create(labelsData, new int[] { batchSize, outputCount }));
+        } else {
+            features.data().setData(featuresData);
+            labels.data().setData(labelsData);
+            result = dataSet;
+        }
+
+        if (preProcessor != null) {
+            preProcessor.preProcess(result);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the first batchSize samples of the sample buffers into the feature rows and one-hot label rows.
+     */
+    static void fill(SampleBuffer[] sampleBuffers, float[] featuresData, float[] labelsData, int inputCount, int outputCount, int batchSize) {
+        Arrays.fill(labelsData, 0);
+        int row = 0;
+        for (SampleBuffer sampleBuffer : sampleBuffers) {
+            int count = Math.min(sampleBuffer.size(), batchSize - row);
+            System.arraycopy(sampleBuffer.features, 0, featuresData, row * inputCount, count * inputCount);
+            for (int i = 0; i < count; i++) {
+                labelsData[(row + i) * outputCount + sampleBuffer.labels[i]] = 1.0f;
+            }
+            row += count;
+        }
+    }
+
+    @Override
+    public DataSet next(int num) {
+        return next();
+    }
+
+    @Override
+    public int inputColumns() {
+        return inputCount;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return outputCount;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return detached;
+    }
+
+    @Override
+    public void reset() {
+        batchIndex = 0;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+}
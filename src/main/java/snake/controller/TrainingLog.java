@@ -0,0 +1,367 @@
+package snake.controller;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only binary log of the training progress of a network, one fixed-size record per epoch.
+ *
+ * The file starts with a 16 byte header (magic, version, record size) followed by the records in epoch order:
+ * <pre>
+ * long timestampMillis, int epoch, float samplesPerSecond, double score, double dead, double eaten
+ * </pre>
+ * Records are read through memory mappings of complete chunks of {@value #CHUNK_RECORDS} records, each mapped once when it is first read,
+ * so a range of epochs can be read or downsampled without loading the whole log; the records after the last complete chunk are read from the file.
+ * A record that was only partially written when the process died is ignored and overwritten.
+ * Values that are not known are stored as NaN.
+ */
+public class TrainingLog implements Closeable {
+    private static final long MAGIC = 0x534E414B45545247L; // "SNAKETRG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    public static final int RECORD_SIZE = 40;
+
+    private static final int CHUNK_RECORDS = 1 << 16;
+
+    private static final int EPOCH_OFFSET = 8;
+    private static final int SAMPLES_PER_SECOND_OFFSET = 12;
+    private static final int SCORE_OFFSET = 16;
+    private static final int DEAD_OFFSET = 24;
+    private static final int EATEN_OFFSET = 32;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_SIZE);
+
+    private int recordCount;
+    private int lastEpoch;
+
+    private final List<MappedByteBuffer> mappedChunks = new ArrayList<>();
+
+    // the last record read from the file after the mapped chunks
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private int readBufferIndex = -1;
+
+    private TrainingLog(Path file, FileChannel channel, int recordCount) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.recordCount = recordCount;
+        lastEpoch = recordCount == 0 ? -1 : read(recordCount - 1).getInt(EPOCH_OFFSET);
+    }
+
+    /**
+     * Opens the log in the specified file for reading and appending, creating it if it does not exist.
+     */
+    public static TrainingLog open(String fileName) {
+        Path file = Paths.get(fileName);
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            try {
+                if (channel.size() < HEADER_SIZE) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putLong(MAGIC);
+                    header.putInt(VERSION);
+                    header.putInt(RECORD_SIZE);
+                    header.flip();
+                    channel.truncate(0);
+                    channel.write(header, 0);
+                    return new TrainingLog(file, channel, 0);
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.getLong() != MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+                    throw new IOException("Not a training log: " + fileName);
+                }
+                int recordCount = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+                return new TrainingLog(file, channel, recordCount);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns whether the specified file is a training log (and not for example the older JSON format).
+     */
+    public static boolean isTrainingLog(String fileName) {
+        Path file = Paths.get(fileName);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            return channel.read(header, 0) == 8 && ((ByteBuffer) header.flip()).getLong() == MAGIC;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void append(Record record) {
+        append(record.epoch, record.score, record.dead, record.eaten, record.samplesPerSecond, record.timestampMillis);
+    }
+
+    public synchronized void append(int epoch, double score, double dead, double eaten, double samplesPerSecond) {
+        append(epoch, score, dead, eaten, samplesPerSecond, System.currentTimeMillis());
+    }
+
+    private void append(int epoch, double score, double dead, double eaten, double samplesPerSecond, long timestampMillis) {
+        writeBuffer.clear();
+        writeBuffer.putLong(timestampMillis);
+        writeBuffer.putInt(epoch);
+        writeBuffer.putFloat((float) samplesPerSecond);
+        writeBuffer.putDouble(score);
+        writeBuffer.putDouble(dead);
+        writeBuffer.putDouble(eaten);
+        writeBuffer.flip();
+        try {
+            long position = HEADER_SIZE + (long) recordCount * RECORD_SIZE;
+            while (writeBuffer.hasRemaining()) {
+                position += channel.write(writeBuffer, position);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        recordCount++;
+        lastEpoch = epoch;
+    }
+
+    /**
+     * Forces the appended records to disk.
+     */
+    public synchronized void flush() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the epoch after the last logged epoch, 0 for an empty log.
+     */
+    public synchronized int getNextEpoch() {
+        return lastEpoch + 1;
+    }
+
+    public synchronized Record getRecord(int index) {
+        ByteBuffer buffer = buffer(index);
+        int offset = offset(index);
+        Record record = new Record();
+        record.timestampMillis = buffer.getLong(offset);
+        record.epoch = buffer.getInt(offset + EPOCH_OFFSET);
+        record.samplesPerSecond = buffer.getFloat(offset + SAMPLES_PER_SECOND_OFFSET);
+        record.score = buffer.getDouble(offset + SCORE_OFFSET);
+        record.dead = buffer.getDouble(offset + DEAD_OFFSET);
+        record.eaten = buffer.getDouble(offset + EATEN_OFFSET);
+        return record;
+    }
+
+    /**
+     * Returns the records with fromEpoch &lt;= epoch &lt; toEpoch, downsampled to at most maxPoints records.
+     *
+     * If there are more records in the range, they are grouped into maxPoints / 2 buckets
+     * and every bucket is replaced by two records, like {@code reduceData} in the charts:
+     * the minimum of every value at the first epoch of the bucket and the maximum of every value at the last epoch.
+     */
+    public synchronized List<Record> query(int fromEpoch, int toEpoch, int maxPoints) {
+        int fromIndex = findIndex(fromEpoch);
+        int toIndex = findIndex(toEpoch);
+        int count = toIndex - fromIndex;
+
+        List<Record> records = new ArrayList<>(Math.min(count, maxPoints));
+        if (count <= maxPoints) {
+            for (int i = fromIndex; i < toIndex; i++) {
+                records.add(getRecord(i));
+            }
+            return records;
+        }
+
+        int bucketCount = Math.max(1, maxPoints / 2);
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int bucketFrom = fromIndex + (int) ((long) count * bucket / bucketCount);
+            int bucketTo = fromIndex + (int) ((long) count * (bucket + 1) / bucketCount);
+
+            // only the two records returned per bucket are decoded, the others are read field by field
+            Record min = getRecord(bucketFrom);
+            Record max = min.copy();
+            Record last = getRecord(bucketTo - 1);
+            max.epoch = last.epoch;
+            max.timestampMillis = last.timestampMillis;
+            for (int i = bucketFrom + 1; i < bucketTo; i++) {
+                ByteBuffer buffer = buffer(i);
+                int offset = offset(i);
+                double score = buffer.getDouble(offset + SCORE_OFFSET);
+                double dead = buffer.getDouble(offset + DEAD_OFFSET);
+                double eaten = buffer.getDouble(offset + EATEN_OFFSET);
+                float samplesPerSecond = buffer.getFloat(offset + SAMPLES_PER_SECOND_OFFSET);
+                min.score = min(min.score, score);
+                min.dead = min(min.dead, dead);
+                min.eaten = min(min.eaten, eaten);
+                min.samplesPerSecond = (float) min(min.samplesPerSecond, samplesPerSecond);
+                max.score = max(max.score, score);
+                max.dead = max(max.dead, dead);
+                max.eaten = max(max.eaten, eaten);
+                max.samplesPerSecond = (float) max(max.samplesPerSecond, samplesPerSecond);
+            }
+            records.add(min);
+            if (bucketTo - bucketFrom > 1) {
+                records.add(max);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes all records as a JSON array of objects.
+     */
+    public synchronized void exportJson(String fileName) {
+        try (JsonWriter writer = new JsonWriter(new FileWriter(fileName))) {
+            writer.setIndent("  ");
+            writer.beginArray();
+            for (int i = 0; i < recordCount; i++) {
+                Record record = getRecord(i);
+                writer.beginObject();
+                writer.name("epoch").value(record.epoch);
+                writer.name("timestamp").value(record.timestampMillis);
+                writeValue(writer, "score", record.score);
+                writeValue(writer, "dead", record.dead);
+                writeValue(writer, "eaten", record.eaten);
+                writeValue(writer, "samplesPerSecond", record.samplesPerSecond);
+                writer.endObject();
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeValue(JsonWriter writer, String name, double value) throws IOException {
+        if (!Double.isNaN(value)) {
+            writer.name(name).value(value);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        mappedChunks.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // first index with an epoch >= the specified epoch
+    private int findIndex(int epoch) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer(middle).getInt(offset(middle) + EPOCH_OFFSET) < epoch) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the buffer containing the record at the index, read the record at offset(index)
+    private ByteBuffer buffer(int index) {
+        int chunk = index / CHUNK_RECORDS;
+        if ((chunk + 1) * CHUNK_RECORDS > recordCount) {
+            try {
+                return read(index);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        try {
+            while (mappedChunks.size() <= chunk) {
+                long position = HEADER_SIZE + (long) mappedChunks.size() * CHUNK_RECORDS * RECORD_SIZE;
+                mappedChunks.add(channel.map(FileChannel.MapMode.READ_ONLY, position, (long) CHUNK_RECORDS * RECORD_SIZE));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return mappedChunks.get(chunk);
+    }
+
+    private int offset(int index) {
+        int chunk = index / CHUNK_RECORDS;
+        if ((chunk + 1) * CHUNK_RECORDS > recordCount) {
+            return 0;
+        }
+        return (index - chunk * CHUNK_RECORDS) * RECORD_SIZE;
+    }
+
+    private ByteBuffer read(int index) throws IOException {
+        if (readBufferIndex != index) {
+            readBuffer.clear();
+            long position = HEADER_SIZE + (long) index * RECORD_SIZE;
+            while (readBuffer.hasRemaining()) {
+                int count = channel.read(readBuffer, position + readBuffer.position());
+                if (count < 0) {
+                    throw new IOException("Unexpected end of training log: " + file);
+                }
+            }
+            readBufferIndex = index;
+        }
+        return readBuffer;
+    }
+
+    private static double min(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+    }
+
+    private static double max(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingLog{" + file + ", records=" + recordCount + "}";
+    }
+
+    public static class Record {
+        public int epoch;
+        public long timestampMillis;
+        public double score = Double.NaN;
+        public double dead = Double.NaN;
+        public double eaten = Double.NaN;
+        public float samplesPerSecond = Float.NaN;
+
+        Record copy() {
+            Record record = new Record();
+            record.epoch = epoch;
+            record.timestampMillis = timestampMillis;
+            record.score = score;
+            record.dead = dead;
+            record.eaten = eaten;
+            record.samplesPerSecond = samplesPerSecond;
+            return record;
+        }
+    }
+}
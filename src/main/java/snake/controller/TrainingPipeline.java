@@ -0,0 +1,173 @@
+package snake.controller;
+
+import snake.wall.WallBuilder;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates training minibatches on a background thread while the model is fitted with the previous ones.
+ *
+ * The number of minibatches in flight is bounded by the prefetch depth:
+ * the producer blocks when all of them are ready and not yet consumed, the consumer blocks when none is ready.
+ * The time both sides spend blocked is reported, so that the number of generator threads can be balanced against the fitting.
+ *
+ * The teacher is forked once per generator worker and the forks are updated before every minibatch (see {@link TeacherForks}),
+ * so a {@link DeeplearningSnakeController} teacher plays with a snapshot of its parameters (unless inference batching shares the model)
+ * and the samples may lag up to prefetch depth minibatches behind the fitted model.
+ */
+public class TrainingPipeline {
+    private final DeeplearningSnakeController controller;
+    private final SnakeController teacher;
+    private final WallBuilder wallBuilder;
+    private final SplittableRandom random;
+    private final int inputCount;
+    private final int outputCount;
+    private final int batchSize;
+    private final int prefetchDepth;
+
+    private final ArrayBlockingQueue<Batch> readyBatches;
+    private final ArrayBlockingQueue<Batch> freeBatches;
+    private final Thread producerThread;
+
+    private volatile boolean running = true;
+    private volatile RuntimeException failure;
+
+    private volatile long producedCount;
+    private volatile long consumedCount;
+    private volatile long producerWaitNanos;
+    private volatile long consumerWaitNanos;
+
+    TrainingPipeline(DeeplearningSnakeController controller, SnakeController teacher, WallBuilder wallBuilder, SplittableRandom random, int inputCount, int outputCount, int batchSize, int prefetchDepth) {
+        this.controller = controller;
+        this.teacher = teacher;
+        this.wallBuilder = wallBuilder;
+        this.random = random;
+        this.inputCount = inputCount;
+        this.outputCount = outputCount;
+        this.batchSize = batchSize;
+        this.prefetchDepth = prefetchDepth;
+
+        readyBatches = new ArrayBlockingQueue<>(prefetchDepth);
+        freeBatches = new ArrayBlockingQueue<>(prefetchDepth);
+        for (int i = 0; i < prefetchDepth; i++) {
+            freeBatches.add(new Batch());
+        }
+
+        producerThread = new Thread(this::produce, "training-pipeline-" + controller.getName());
+        producerThread.setDaemon(true);
+        producerThread.start();
+    }
+
+    boolean isFor(SnakeController teacher, WallBuilder wallBuilder) {
+        return this.teacher == teacher && this.wallBuilder == wallBuilder;
+    }
+
+    private void produce() {
+        int workerCount = Math.max(1, controller.getGeneratorThreads());
+        SampleBuffer[] sampleBuffers = new SampleBuffer[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            sampleBuffers[i] = new SampleBuffer(inputCount, batchSize / workerCount + 100);
+        }
+
+        TeacherForks teachers = new TeacherForks(teacher, workerCount, random.split());
+        try {
+            while (running) {
+                long waitStart = System.nanoTime();
+                Batch batch = freeBatches.take();
+                producerWaitNanos += System.nanoTime() - waitStart;
+
+                SplittableRandom batchRandom = random.split();
+                controller.generateSamples(teachers, wallBuilder, sampleBuffers, batchSize, batchRandom);
+                TrainingDataSetIterator.fill(sampleBuffers, batch.features, batch.labels, inputCount, outputCount, batchSize);
+
+                readyBatches.put(batch);
+                producedCount++;
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Copies the next ready minibatch into features and labels, blocking until one is ready.
+     */
+    void take(float[] features, float[] labels) {
+        long waitStart = System.nanoTime();
+        Batch batch = null;
+        try {
+            while (batch == null) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (!running) {
+                    throw new IllegalStateException("Training pipeline is stopped");
+                }
+                batch = readyBatches.poll(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        consumerWaitNanos += System.nanoTime() - waitStart;
+
+        System.arraycopy(batch.features, 0, features, 0, features.length);
+        System.arraycopy(batch.labels, 0, labels, 0, labels.length);
+        freeBatches.add(batch);
+        consumedCount++;
+    }
+
+    /**
+     * Stops the producer and waits until it has finished the minibatch it is generating.
+     * Must not be called while holding the lock of the controller, which the producer may need to finish.
+     */
+    void stop() {
+        running = false;
+        producerThread.interrupt();
+        try {
+            producerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public long getProducedCount() {
+        return producedCount;
+    }
+
+    public long getConsumedCount() {
+        return consumedCount;
+    }
+
+    /**
+     * Returns the total time the producer waited for the consumer (the generator is faster than the fitting).
+     */
+    public long getProducerWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(producerWaitNanos);
+    }
+
+    /**
+     * Returns the total time the consumer waited for the producer (the fitting is faster than the generator).
+     */
+    public long getConsumerWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(consumerWaitNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingPipeline{prefetch=" + prefetchDepth + ", produced=" + producedCount + ", consumed=" + consumedCount
+                + ", producerWait=" + getProducerWaitMillis() + "ms, consumerWait=" + getConsumerWaitMillis() + "ms}";
+    }
+
+    private class Batch {
+        final float[] features = new float[batchSize * inputCount];
+        final float[] labels = new float[batchSize * outputCount];
+    }
+}
@@ -0,0 +1,87 @@
+package snake.controller;
+
+import snake.domain.Move;
+
+/**
+ * Fixed-size transposition table keyed by {@link snake.domain.SnakeMap#getHash()}, storing the best move, value and search depth.
+ *
+ * Entries are two longs (key xor data, data), so concurrent readers and writers need no locks:
+ * an entry torn by a concurrent write does not validate and is treated as a miss.
+ */
+public class TranspositionTable {
+    public static final long NOT_FOUND = 0;
+
+    private static final Move[] MOVES = Move.values();
+
+    private static final int DEPTH_SHIFT = 32;
+    private static final int MOVE_SHIFT = 48;
+    private static final long VALID_BIT = 1L << 52;
+    private static final int MAX_DEPTH = 0xffff;
+
+    private final long[] entries;
+    private final int mask;
+
+    /**
+     * @param sizeBits the table has 2^sizeBits entries
+     */
+    public TranspositionTable(int sizeBits) {
+        int size = 1 << sizeBits;
+        entries = new long[size * 2];
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the packed entry for the hash, or {@link #NOT_FOUND}.
+     * Use {@link #getMove(long)}, {@link #getValue(long)} and {@link #getDepth(long)} to unpack it.
+     */
+    public long probe(long hash) {
+        int index = index(hash);
+        long checkedKey = entries[index];
+        long data = entries[index + 1];
+        if ((checkedKey ^ data) != hash || (data & VALID_BIT) == 0) {
+            return NOT_FOUND;
+        }
+        return data;
+    }
+
+    /**
+     * Stores the entry unless the slot already holds a deeper search of the same position.
+     */
+    public void store(long hash, Move bestMove, float value, int depth) {
+        int index = index(hash);
+        long existingData = entries[index + 1];
+        if ((entries[index] ^ existingData) == hash && (existingData & VALID_BIT) != 0 && getDepth(existingData) > depth) {
+            return;
+        }
+
+        long data = VALID_BIT
+                | (long) (bestMove == null ? MOVES.length : bestMove.ordinal()) << MOVE_SHIFT
+                | (long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT
+                | (Float.floatToRawIntBits(value) & 0xffffffffL);
+        entries[index] = hash ^ data;
+        entries[index + 1] = data;
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = 0;
+        }
+    }
+
+    public static Move getMove(long entry) {
+        int ordinal = (int) (entry >>> MOVE_SHIFT) & 0x7;
+        return ordinal < MOVES.length ? MOVES[ordinal] : null;
+    }
+
+    public static float getValue(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    public static int getDepth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    private int index(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & mask) * 2;
+    }
+}
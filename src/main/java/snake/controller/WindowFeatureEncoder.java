@@ -0,0 +1,48 @@
+package snake.controller;
+
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+import snake.domain.Tile;
+
+/**
+ * Encodes the square window of tiles around the head and the apple direction.
+ */
+public class WindowFeatureEncoder implements FeatureEncoder {
+    // indexed by Tile.ordinal()
+    static final float[] tileToInput = new float[Tile.values().length];
+    static {
+        tileToInput[Tile.Empty.ordinal()] = 0.9f;
+        tileToInput[Tile.Apple.ordinal()] = 1.0f;
+        tileToInput[Tile.Wall.ordinal()] = 0.0f;
+        tileToInput[Tile.SnakeHead.ordinal()] = 0.0f;
+        tileToInput[Tile.SnakeTail.ordinal()] = 0.0f;
+    }
+
+    private final int inputWidth;
+
+    public WindowFeatureEncoder(int inputWidth) {
+        this.inputWidth = inputWidth;
+    }
+
+    @Override
+    public int getInputCount() {
+        return inputWidth * inputWidth + 2;
+    }
+
+    @Override
+    public void encode(Snake snake, SnakeMap snakeMap, float[] input, int offset) {
+        int x = snake.getX(0);
+        int y = snake.getY(0);
+
+        int inputRadius = inputWidth / 2;
+        for (int inputY = 0; inputY < inputWidth; inputY++) {
+            for (int inputX = 0; inputX < inputWidth; inputX++) {
+                input[offset + inputX + inputY * inputWidth] = tileToInput[snakeMap.get(x + (inputX - inputRadius), y + (inputY - inputRadius)).ordinal()];
+            }
+        }
+
+        int inputCount = getInputCount();
+        input[offset + inputCount - 2] = (float) (snakeMap.getAppleX() - x) / snakeMap.width;
+        input[offset + inputCount - 1] = (float) (snakeMap.getAppleY() - y) / snakeMap.height;
+    }
+}
@@ -0,0 +1,85 @@
+package snake.domain;
+
+import java.util.Arrays;
+
+/**
+ * Set of cell indices in a dense array with a position map, supporting O(1) add, remove (swap-remove) and random access.
+ */
+class CellSet {
+    private final int[] cells;
+    private final int[] positions;
+    private int size;
+
+    CellSet(int capacity) {
+        cells = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[cells[i]] = -1;
+        }
+        size = 0;
+    }
+
+    void fill(int count) {
+        clear();
+        for (int i = 0; i < count; i++) {
+            cells[i] = i;
+            positions[i] = i;
+        }
+        size = count;
+    }
+
+    boolean contains(int cell) {
+        return positions[cell] >= 0;
+    }
+
+    void add(int cell) {
+        if (positions[cell] >= 0) {
+            return;
+        }
+        cells[size] = cell;
+        positions[cell] = size;
+        size++;
+    }
+
+    void remove(int cell) {
+        int position = positions[cell];
+        if (position < 0) {
+            return;
+        }
+        size--;
+        int lastCell = cells[size];
+        cells[position] = lastCell;
+        positions[lastCell] = position;
+        positions[cell] = -1;
+    }
+
+    /**
+     * Reverts a {@link #remove(int)} of the cell from the specified position.
+     */
+    void insertAt(int cell, int position) {
+        if (position < size) {
+            int movedCell = cells[position];
+            cells[size] = movedCell;
+            positions[movedCell] = size;
+        }
+        cells[position] = cell;
+        positions[cell] = position;
+        size++;
+    }
+
+    int position(int cell) {
+        return positions[cell];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int position) {
+        return cells[position];
+    }
+}
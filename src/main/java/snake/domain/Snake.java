@@ -25,7 +25,12 @@ public class Snake {
         for (int i = 0; i <= length; i++) {
             Tile tile = i == 0 ? Tile.SnakeHead : Tile.SnakeTail;
             map.set(getX(i), getY(i), tile);
+            if (i < length) {
+                map.toggleBodyLink(getX(i + 1), getY(i + 1), getX(i), getY(i));
+            }
         }
+        map.toggleTailMarker(x[tailIndex], y[tailIndex]);
+        map.toggleLength(length);
     }
 
     public boolean move(int dX, int dY, SnakeMap snakeMap) {
@@ -35,6 +40,9 @@ public class Snake {
         int newHeadX = oldHeadX + dX;
         int newHeadY = oldHeadY + dY;
 
+        int oldTailX = x[tailIndex];
+        int oldTailY = y[tailIndex];
+
         boolean eaten = snakeMap.get(newHeadX, newHeadY) == Tile.Apple;
 
         if (!eaten) {
@@ -66,10 +74,45 @@ public class Snake {
         alive = underHead == Tile.Empty || underHead == Tile.Apple;
 
         snakeMap.set(newHeadX, newHeadY, Tile.SnakeHead);
+        snakeMap.moveTailMarker(oldTailX, oldTailY, x[tailIndex], y[tailIndex]);
+        snakeMap.toggleBodyLink(oldHeadX, oldHeadY, newHeadX, newHeadY);
+        if (eaten) {
+            snakeMap.changeLength(length - 1, length);
+        } else {
+            snakeMap.toggleBodyLink(oldTailX, oldTailY, x[tailIndex], y[tailIndex]);
+        }
 
         return eaten;
     }
 
+    int getHeadIndex() {
+        return headIndex;
+    }
+
+    int getTailIndex() {
+        return tailIndex;
+    }
+
+    int getNextHeadX() {
+        return x[(headIndex + 1) % x.length];
+    }
+
+    int getNextHeadY() {
+        return y[(headIndex + 1) % y.length];
+    }
+
+    /**
+     * Reverts a {@link #move(int, int, SnakeMap)} (without touching the map) to the state recorded before it.
+     */
+    void undoMove(int headIndex, int tailIndex, int length, boolean alive, int overwrittenX, int overwrittenY) {
+        x[this.headIndex] = overwrittenX;
+        y[this.headIndex] = overwrittenY;
+        this.headIndex = headIndex;
+        this.tailIndex = tailIndex;
+        this.length = length;
+        this.alive = alive;
+    }
+
     public int getLength() {
         return length;
     }
@@ -4,9 +4,14 @@ import snake.controller.SnakeController;
 import snake.wall.NoWallBuilder;
 import snake.wall.WallBuilder;
 
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 public class SnakeGame {
+    private static final Move[] MOVES = Move.values();
+    private static final int UNDO_RECORD_SIZE = 15;
+    static final long APPLE_SEED_GAMMA = 0x9e3779b97f4a7c15L;
+
     public final int width;
     public final int height;
     private final int wallCount;
@@ -19,61 +24,59 @@ public class SnakeGame {
     private boolean hasEaten;
     private Move move;
 
-    private Random random = new Random();
+    // state of the SplitMix64 generator (the algorithm of SplittableRandom) for the next apple, stepped inline so that placing an apple creates no objects
+    // and restored by undo to rewind the apple placement
+    private long appleSeed;
+
+    private int[] undoLog = new int[UNDO_RECORD_SIZE * 16];
+    private int undoSize;
 
     public SnakeGame(SnakeController snakeController) {
         this(10, 10, new NoWallBuilder(), 1, snakeController);
     }
 
     public SnakeGame(int width, int height, WallBuilder wallBuilder, int initialLength, SnakeController snakeController) {
+        this(width, height, wallBuilder, initialLength, snakeController, new SplittableRandom());
+    }
+
+    /**
+     * @param random the generator for walls, start position and the seed of the apples; a game with the same seed and a deterministic controller replays identically
+     */
+    public SnakeGame(int width, int height, WallBuilder wallBuilder, int initialLength, SnakeController snakeController, SplittableRandom random) {
         this.width = width;
         this.height = height;
         this.snakeController = snakeController;
 
-        this.snakeMap = new SnakeMap(width, height);
+        this.snakeMap = new SnakeMap(width, height, true);
 
-        wallCount = wallBuilder.createWall(snakeMap);
+        wallCount = wallBuilder.createWall(snakeMap, random);
 
-        int x;
-        int y;
-        do {
-            x = random.nextInt(width);
-            y = random.nextInt(height);
-        } while (snakeMap.get(x, y) != Tile.Empty);
-        this.snake = new Snake(x, y, width*height, initialLength);
+        int cell = snakeMap.getFreeCell(random.nextInt(snakeMap.countFreeCells()));
+        this.snake = new Snake(cell % width, cell / width, width*height, initialLength);
         snake.render(snakeMap);
 
+        appleSeed = random.nextLong();
         setRandomApple();
     }
 
     private void setRandomApple() {
-        int x;
-        int y;
-        int freeNeighbours;
-        do {
-            x = random.nextInt(width);
-            y = random.nextInt(height);
-            freeNeighbours = countFreeNeighbours(x, y);
-        } while (snakeMap.get(x, y) != Tile.Empty && freeNeighbours >= 2);
-
-        snakeMap.setApple(x, y);
+        appleSeed += APPLE_SEED_GAMMA;
+        int cell = snakeMap.pickRandomAppleCell(mixAppleSeed(appleSeed));
+        if (cell < 0) {
+            return;
+        }
+
+        snakeMap.setApple(cell % width, cell / width);
     }
 
-    private int countFreeNeighbours(int x, int y) {
-        int count = 0;
-        if (snakeMap.get(x - 1, y) == Tile.Empty) {
-            count++;
-        }
-        if (snakeMap.get(x + 1, y) == Tile.Empty) {
-            count++;
-        }
-        if (snakeMap.get(x, y - 1) == Tile.Empty) {
-            count++;
-        }
-        if (snakeMap.get(x, y + 1) == Tile.Empty) {
-            count++;
-        }
-        return count;
+    static long mixAppleSeed(long seed) {
+        long z = (seed ^ (seed >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public long getHash() {
+        return snakeMap.getHash();
     }
 
     public Tile getTiles(int x, int y) {
@@ -81,7 +84,74 @@ public class SnakeGame {
     }
 
     public boolean step() {
-        move = snakeController.getMove(snake, snakeMap);
+        clearUndo();
+        return move(snakeController.getMove(snake, snakeMap));
+    }
+
+    /**
+     * Executes the specified move like {@link #step()} but records it, so that it can be reverted with {@link #undo()}.
+     *
+     * The apple generator is reverted as well, so applying the same moves again after an undo places the same apples.
+     */
+    public boolean apply(Move move) {
+        if (undoSize + UNDO_RECORD_SIZE > undoLog.length) {
+            undoLog = Arrays.copyOf(undoLog, undoLog.length * 2);
+        }
+        undoLog[undoSize++] = snakeMap.startJournal();
+        undoLog[undoSize++] = snake.getHeadIndex();
+        undoLog[undoSize++] = snake.getTailIndex();
+        undoLog[undoSize++] = snake.getLength();
+        undoLog[undoSize++] = snake.alive ? 1 : 0;
+        undoLog[undoSize++] = snake.getNextHeadX();
+        undoLog[undoSize++] = snake.getNextHeadY();
+        undoLog[undoSize++] = snakeMap.getAppleX();
+        undoLog[undoSize++] = snakeMap.getAppleY();
+        undoLog[undoSize++] = hasEaten ? 1 : 0;
+        undoLog[undoSize++] = this.move == null ? -1 : this.move.ordinal();
+        undoLog[undoSize++] = (int) (appleSeed >>> 32);
+        undoLog[undoSize++] = (int) appleSeed;
+        undoLog[undoSize++] = (int) (snakeMap.getHash() >>> 32);
+        undoLog[undoSize++] = (int) snakeMap.getHash();
+
+        return move(move);
+    }
+
+    /**
+     * Reverts the last {@link #apply(Move)}.
+     */
+    public void undo() {
+        if (undoSize == 0) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+
+        undoSize -= UNDO_RECORD_SIZE;
+        int i = undoSize;
+        snakeMap.rollback(undoLog[i]);
+        snake.undoMove(undoLog[i + 1], undoLog[i + 2], undoLog[i + 3], undoLog[i + 4] != 0, undoLog[i + 5], undoLog[i + 6]);
+        snakeMap.restoreHash((long) undoLog[i + 13] << 32 | (undoLog[i + 14] & 0xffffffffL));
+        snakeMap.restoreApple(undoLog[i + 7], undoLog[i + 8]);
+        hasEaten = undoLog[i + 9] != 0;
+        move = undoLog[i + 10] < 0 ? null : MOVES[undoLog[i + 10]];
+        appleSeed = (long) undoLog[i + 11] << 32 | (undoLog[i + 12] & 0xffffffffL);
+
+        if (undoSize == 0) {
+            snakeMap.stopJournal();
+        }
+    }
+
+    public int getUndoDepth() {
+        return undoSize / UNDO_RECORD_SIZE;
+    }
+
+    private void clearUndo() {
+        if (undoSize > 0) {
+            undoSize = 0;
+            snakeMap.stopJournal();
+        }
+    }
+
+    private boolean move(Move move) {
+        this.move = move;
         hasEaten = snake.move(move.dX, move.dY, snakeMap);
         if (snake.getLength() >= width*height-wallCount-1) {
             return false; // WIN!
@@ -0,0 +1,370 @@
+package snake.domain;
+
+import snake.wall.WallBuilder;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Steps many snake games of the same size in lockstep.
+ *
+ * All boards, snake bodies, apples and alive flags are stored in flat primitive arrays indexed by game,
+ * so stepping thousands of games does not create any per-game objects.
+ * Apples are drawn with the same inline SplitMix64 step on a per-game seed as in {@link SnakeGame}.
+ * The rules are the same as in {@link SnakeGame#step()} and {@link Snake#move(int, int, SnakeMap)}.
+ * Like {@link SnakeMap}, every game keeps its free cells and its apple candidates (empty cells with at least 2 empty neighbours)
+ * in dense sets, so placing an apple needs a single random draw.
+ */
+public class SnakeGameBatch {
+    public static final byte EATEN = 1;
+    public static final byte DEAD = 2;
+    public static final byte WON = 4;
+
+    private static final byte EMPTY = (byte) Tile.Empty.ordinal();
+    private static final byte WALL = (byte) Tile.Wall.ordinal();
+    private static final byte SNAKE_HEAD = (byte) Tile.SnakeHead.ordinal();
+    private static final byte SNAKE_TAIL = (byte) Tile.SnakeTail.ordinal();
+    private static final byte APPLE = (byte) Tile.Apple.ordinal();
+
+    private static final Tile[] TILES = Tile.values();
+    private static final Move[] MOVES = Move.values();
+
+    public final int count;
+    public final int width;
+    public final int height;
+    private final int cellCount;
+
+    private final byte[] tiles;
+    private final int[] bodyX;
+    private final int[] bodyY;
+    private final int[] length;
+    private final int[] headIndex;
+    private final int[] tailIndex;
+    private final int[] wallCount;
+    private final int[] appleX;
+    private final int[] appleY;
+    private final long[] appleSeeds;
+    private final boolean[] alive;
+    private final byte[] results;
+
+    // dense cell sets with position maps like CellSet, cells and positions indexed by game * cellCount
+    private final int[] freeCells;
+    private final int[] freePositions;
+    private final int[] freeCount;
+    private final int[] candidateCells;
+    private final int[] candidatePositions;
+    private final int[] candidateCount;
+
+    private final SnakeMap wallMap;
+
+    private final SplittableRandom random;
+
+    public SnakeGameBatch(int count, int width, int height) {
+        this(count, width, height, new SplittableRandom());
+    }
+
+    public SnakeGameBatch(int count, int width, int height, SplittableRandom random) {
+        this.count = count;
+        this.width = width;
+        this.height = height;
+        this.cellCount = width * height;
+
+        tiles = new byte[count * cellCount];
+        bodyX = new int[count * cellCount];
+        bodyY = new int[count * cellCount];
+        length = new int[count];
+        headIndex = new int[count];
+        tailIndex = new int[count];
+        wallCount = new int[count];
+        appleX = new int[count];
+        appleY = new int[count];
+        appleSeeds = new long[count];
+        alive = new boolean[count];
+        results = new byte[count];
+        freeCells = new int[count * cellCount];
+        freePositions = new int[count * cellCount];
+        freeCount = new int[count];
+        candidateCells = new int[count * cellCount];
+        candidatePositions = new int[count * cellCount];
+        candidateCount = new int[count];
+
+        wallMap = new SnakeMap(width, height, true);
+        this.random = random;
+    }
+
+    public void reset(WallBuilder wallBuilder, int initialLength) {
+        for (int game = 0; game < count; game++) {
+            reset(game, wallBuilder, initialLength);
+        }
+    }
+
+    public void reset(int game, WallBuilder wallBuilder, int initialLength) {
+        reset(game, wallBuilder, initialLength, random);
+    }
+
+    /**
+     * Resets the game drawing walls, start position and apple seed from the specified generator,
+     * the game then plays like a {@link SnakeGame} created with a generator with the same seed.
+     */
+    public void reset(int game, WallBuilder wallBuilder, int initialLength, SplittableRandom random) {
+        int tileOffset = game * cellCount;
+
+        wallMap.clear();
+        wallCount[game] = wallBuilder.createWall(wallMap, random);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                tiles[tileOffset + x + y * width] = (byte) wallMap.get(x, y).ordinal();
+            }
+        }
+
+        // the sets are copied in order, so that the same random draws pick the same cells as in the map
+        Arrays.fill(freePositions, tileOffset, tileOffset + cellCount, -1);
+        Arrays.fill(candidatePositions, tileOffset, tileOffset + cellCount, -1);
+        freeCount[game] = 0;
+        for (int i = 0; i < wallMap.countFreeCells(); i++) {
+            add(freeCells, freePositions, freeCount, game, wallMap.getFreeCell(i));
+        }
+        candidateCount[game] = 0;
+        for (int i = 0; i < wallMap.countAppleCandidateCells(); i++) {
+            add(candidateCells, candidatePositions, candidateCount, game, wallMap.getAppleCandidateCell(i));
+        }
+
+        int startCell = freeCells[tileOffset + random.nextInt(freeCount[game])];
+        int x = startCell % width;
+        int y = startCell / width;
+
+        int bodyOffset = game * cellCount;
+        length[game] = initialLength;
+        headIndex[game] = initialLength;
+        tailIndex[game] = 0;
+        for (int i = 0; i <= initialLength; i++) {
+            bodyX[bodyOffset + i] = x;
+            bodyY[bodyOffset + i] = y;
+        }
+        for (int i = 0; i <= initialLength; i++) {
+            set(game, getX(game, i), getY(game, i), i == 0 ? SNAKE_HEAD : SNAKE_TAIL);
+        }
+
+        alive[game] = true;
+        results[game] = 0;
+
+        appleSeeds[game] = random.nextLong();
+        setRandomApple(game);
+    }
+
+    /**
+     * Steps every running game with the move at the same index (as {@link Move#ordinal()}).
+     *
+     * @return the per-game combination of {@link #EATEN}, {@link #DEAD} and {@link #WON}, 0 for games that did not run
+     */
+    public byte[] step(int[] moves) {
+        for (int game = 0; game < count; game++) {
+            if (alive[game]) {
+                results[game] = step(game, MOVES[moves[game]]);
+            } else {
+                results[game] = 0;
+            }
+        }
+        return results;
+    }
+
+    private byte step(int game, Move move) {
+        int bodyOffset = game * cellCount;
+
+        int oldHeadX = bodyX[bodyOffset + headIndex[game]];
+        int oldHeadY = bodyY[bodyOffset + headIndex[game]];
+
+        int newHeadX = oldHeadX + move.dX;
+        int newHeadY = oldHeadY + move.dY;
+
+        boolean eaten = get(game, newHeadX, newHeadY) == APPLE;
+
+        if (!eaten) {
+            int tail = bodyOffset + tailIndex[game];
+            set(game, bodyX[tail], bodyY[tail], EMPTY);
+
+            tailIndex[game]++;
+            if (tailIndex[game] >= cellCount) {
+                tailIndex[game] = 0;
+            }
+        } else {
+            length[game]++;
+        }
+
+        if (length[game] > 0) {
+            set(game, oldHeadX, oldHeadY, SNAKE_TAIL);
+        }
+
+        headIndex[game]++;
+        if (headIndex[game] >= cellCount) {
+            headIndex[game] = 0;
+        }
+
+        bodyX[bodyOffset + headIndex[game]] = newHeadX;
+        bodyY[bodyOffset + headIndex[game]] = newHeadY;
+
+        byte underHead = get(game, newHeadX, newHeadY);
+        boolean snakeAlive = underHead == EMPTY || underHead == APPLE;
+
+        set(game, newHeadX, newHeadY, SNAKE_HEAD);
+
+        if (length[game] >= cellCount - wallCount[game] - 1) {
+            alive[game] = false;
+            return (byte) ((eaten ? EATEN : 0) | WON);
+        }
+        if (eaten) {
+            setRandomApple(game);
+        }
+        alive[game] = snakeAlive;
+        return (byte) ((eaten ? EATEN : 0) | (snakeAlive ? 0 : DEAD));
+    }
+
+    private void setRandomApple(int game) {
+        // same as SnakeMap#pickRandomAppleCell(): uniform over empty cells with at least 2 empty neighbours, otherwise over all empty cells
+        int offset = game * cellCount;
+        appleSeeds[game] += SnakeGame.APPLE_SEED_GAMMA;
+        long randomBits = SnakeGame.mixAppleSeed(appleSeeds[game]);
+        int cell;
+        if (candidateCount[game] > 0) {
+            cell = candidateCells[offset + SnakeMap.randomIndex(randomBits, candidateCount[game])];
+        } else if (freeCount[game] > 0) {
+            cell = freeCells[offset + SnakeMap.randomIndex(randomBits, freeCount[game])];
+        } else {
+            cell = -1;
+        }
+        if (cell < 0) {
+            return;
+        }
+
+        appleX[game] = cell % width;
+        appleY[game] = cell / width;
+        set(game, appleX[game], appleY[game], APPLE);
+    }
+
+    private int countFreeNeighbours(int game, int x, int y) {
+        int count = 0;
+        if (get(game, x - 1, y) == EMPTY) {
+            count++;
+        }
+        if (get(game, x + 1, y) == EMPTY) {
+            count++;
+        }
+        if (get(game, x, y - 1) == EMPTY) {
+            count++;
+        }
+        if (get(game, x, y + 1) == EMPTY) {
+            count++;
+        }
+        return count;
+    }
+
+    private void updateAppleCandidate(int game, int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+
+        int cell = x + y * width;
+        if (get(game, x, y) == EMPTY && countFreeNeighbours(game, x, y) >= 2) {
+            add(candidateCells, candidatePositions, candidateCount, game, cell);
+        } else {
+            remove(candidateCells, candidatePositions, candidateCount, game, cell);
+        }
+    }
+
+    private void add(int[] cells, int[] positions, int[] sizes, int game, int cell) {
+        int offset = game * cellCount;
+        if (positions[offset + cell] >= 0) {
+            return;
+        }
+        cells[offset + sizes[game]] = cell;
+        positions[offset + cell] = sizes[game];
+        sizes[game]++;
+    }
+
+    private void remove(int[] cells, int[] positions, int[] sizes, int game, int cell) {
+        int offset = game * cellCount;
+        int position = positions[offset + cell];
+        if (position < 0) {
+            return;
+        }
+        sizes[game]--;
+        int lastCell = cells[offset + sizes[game]];
+        cells[offset + position] = lastCell;
+        positions[offset + lastCell] = position;
+        positions[offset + cell] = -1;
+    }
+
+    private byte get(int game, int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return WALL;
+        }
+
+        return tiles[game * cellCount + x + y * width];
+    }
+
+    private void set(int game, int x, int y, byte tile) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+
+        int index = game * cellCount + x + y * width;
+        boolean wasEmpty = tiles[index] == EMPTY;
+        boolean isEmpty = tile == EMPTY;
+        tiles[index] = tile;
+
+        if (wasEmpty != isEmpty) {
+            // same order of updates as in SnakeMap#set(), so that the sets stay in the same order
+            if (isEmpty) {
+                add(freeCells, freePositions, freeCount, game, x + y * width);
+            } else {
+                remove(freeCells, freePositions, freeCount, game, x + y * width);
+            }
+            updateAppleCandidate(game, x, y);
+            updateAppleCandidate(game, x, y - 1);
+            updateAppleCandidate(game, x, y + 1);
+            updateAppleCandidate(game, x - 1, y);
+            updateAppleCandidate(game, x + 1, y);
+        }
+    }
+
+    public Tile getTile(int game, int x, int y) {
+        return TILES[get(game, x, y)];
+    }
+
+    public boolean isAlive(int game) {
+        return alive[game];
+    }
+
+    public int getLength(int game) {
+        return length[game];
+    }
+
+    public int getX(int game, int index) {
+        int i = (headIndex[game] + cellCount - index) % cellCount;
+        return bodyX[game * cellCount + i];
+    }
+
+    public int getY(int game, int index) {
+        int i = (headIndex[game] + cellCount - index) % cellCount;
+        return bodyY[game * cellCount + i];
+    }
+
+    public int getAppleX(int game) {
+        return appleX[game];
+    }
+
+    public int getAppleY(int game) {
+        return appleY[game];
+    }
+
+    public void copyTo(int game, SnakeMap snakeMap) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                snakeMap.set(x, y, TILES[get(game, x, y)]);
+            }
+        }
+        if (get(game, appleX[game], appleY[game]) == APPLE) {
+            snakeMap.setApple(appleX[game], appleY[game]);
+        }
+    }
+}
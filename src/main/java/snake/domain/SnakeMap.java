@@ -3,18 +3,76 @@ package snake.domain;
 import java.util.Arrays;
 
 public class SnakeMap {
+    private static final Tile[] TILES = Tile.values();
+
+    private static final byte EMPTY = (byte) Tile.Empty.ordinal();
+    private static final byte WALL = (byte) Tile.Wall.ordinal();
+    private static final byte APPLE = (byte) Tile.Apple.ordinal();
+
     public final int width;
     public final int height;
-    private Tile[] tiles;
+
+    // one byte (Tile ordinal) per cell, surrounded by a border of walls so that neighbour queries need no bounds checks
+    private final int stride;
+    private final byte[] tiles;
+
+    // cells are numbered x + y * width
+    private final CellSet freeCells;
+    private final CellSet appleCandidateCells;
 
     private int appleX;
     private int appleY;
 
+    // Zobrist hash: xor of the keys of all non-empty tiles, of the snake tail marker, of the link from every body cell
+    // to the next cell towards the head and of the snake length, so that it captures the order in which the tail frees the cells
+    private long hash;
+
+    // while journaling, every change is recorded so it can be rolled back:
+    // a tile change as (cell, previous tile, previous free cell position),
+    // an apple candidate change as (~cell, previous candidate position or -1 if it was added, 0)
+    private boolean journaling;
+    private int[] journal = new int[3 * 16];
+    private int journalSize;
+
     public SnakeMap(int width, int height) {
+        this(width, height, false);
+    }
+
+    /**
+     * @param trackAppleCandidates whether to also maintain the set of empty cells with at least 2 empty neighbours
+     */
+    public SnakeMap(int width, int height, boolean trackAppleCandidates) {
         this.width = width;
         this.height = height;
-        tiles = new Tile[width*height];
-        Arrays.setAll(tiles, (i) -> Tile.Empty);
+        stride = width + 2;
+        tiles = new byte[stride * (height + 2)];
+        freeCells = new CellSet(width * height);
+        appleCandidateCells = trackAppleCandidates ? new CellSet(width * height) : null;
+        clear();
+    }
+
+    public void clear() {
+        Arrays.fill(tiles, WALL);
+        for (int y = 0; y < height; y++) {
+            int rowIndex = index(0, y);
+            Arrays.fill(tiles, rowIndex, rowIndex + width, EMPTY);
+        }
+
+        hash = 0;
+        freeCells.fill(width * height);
+        if (appleCandidateCells != null) {
+            if (width >= 2 && height >= 2) {
+                // on an empty map even the corners have 2 free neighbours
+                appleCandidateCells.fill(width * height);
+                return;
+            }
+            appleCandidateCells.clear();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    updateAppleCandidate(x, y);
+                }
+            }
+        }
     }
 
     public Tile get(int x, int y) {
@@ -22,7 +80,7 @@ public class SnakeMap {
             return Tile.Wall;
         }
 
-        return tiles[x + y * width];
+        return TILES[tiles[index(x, y)]];
     }
 
     public void set(int x, int y, Tile tile) {
@@ -30,7 +88,127 @@ public class SnakeMap {
             return;
         }
 
-        tiles[x + y * width] = tile;
+        int index = index(x, y);
+        byte value = (byte) tile.ordinal();
+        if (journaling) {
+            record(x + y * width, tiles[index]);
+        }
+        boolean wasEmpty = tiles[index] == EMPTY;
+        boolean isEmpty = value == EMPTY;
+        hash ^= zobristKey(x + y * width, tiles[index]) ^ zobristKey(x + y * width, value);
+        tiles[index] = value;
+
+        if (wasEmpty != isEmpty) {
+            int cell = x + y * width;
+            if (isEmpty) {
+                freeCells.add(cell);
+            } else {
+                freeCells.remove(cell);
+            }
+
+            if (appleCandidateCells != null) {
+                updateAppleCandidate(x, y);
+                updateAppleCandidate(x, y - 1);
+                updateAppleCandidate(x, y + 1);
+                updateAppleCandidate(x - 1, y);
+                updateAppleCandidate(x + 1, y);
+            }
+        }
+    }
+
+    private void record(int cell, byte previousTile) {
+        if (journalSize + 3 > journal.length) {
+            journal = Arrays.copyOf(journal, journal.length * 2);
+        }
+        journal[journalSize++] = cell;
+        journal[journalSize++] = previousTile;
+        journal[journalSize++] = freeCells.position(cell);
+    }
+
+    private void recordAppleCandidate(int cell) {
+        if (journalSize + 3 > journal.length) {
+            journal = Arrays.copyOf(journal, journal.length * 2);
+        }
+        journal[journalSize++] = ~cell;
+        journal[journalSize++] = appleCandidateCells.position(cell);
+        journal[journalSize++] = 0;
+    }
+
+    /**
+     * Starts recording changes (if not already recording) and returns the mark to {@link #rollback(int)} to.
+     */
+    int startJournal() {
+        journaling = true;
+        return journalSize;
+    }
+
+    void stopJournal() {
+        journaling = false;
+        journalSize = 0;
+    }
+
+    /**
+     * Reverts all changes recorded since the mark, in reverse order, so that the free cell and apple candidate sets
+     * are restored exactly, including the positions of their cells.
+     */
+    void rollback(int mark) {
+        while (journalSize > mark) {
+            journalSize -= 3;
+            int cell = journal[journalSize];
+            if (cell < 0) {
+                int previousCandidatePosition = journal[journalSize + 1];
+                if (previousCandidatePosition < 0) {
+                    appleCandidateCells.remove(~cell);
+                } else {
+                    appleCandidateCells.insertAt(~cell, previousCandidatePosition);
+                }
+                continue;
+            }
+
+            byte previousTile = (byte) journal[journalSize + 1];
+            int previousFreePosition = journal[journalSize + 2];
+
+            int x = cell % width;
+            int y = cell / width;
+            int index = index(x, y);
+            boolean isEmpty = tiles[index] == EMPTY;
+            boolean wasEmpty = previousTile == EMPTY;
+            hash ^= zobristKey(cell, tiles[index]) ^ zobristKey(cell, previousTile);
+            tiles[index] = previousTile;
+
+            if (wasEmpty != isEmpty) {
+                if (wasEmpty) {
+                    freeCells.insertAt(cell, previousFreePosition);
+                } else {
+                    freeCells.remove(cell);
+                }
+            }
+        }
+    }
+
+    void restoreApple(int x, int y) {
+        appleX = x;
+        appleY = y;
+    }
+
+    private void updateAppleCandidate(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+
+        int cell = x + y * width;
+        boolean candidate = tiles[index(x, y)] == EMPTY && countFreeNeighbours(x, y) >= 2;
+        if (candidate == appleCandidateCells.contains(cell)) {
+            return;
+        }
+        if (journaling) {
+            recordAppleCandidate(cell);
+        }
+        if (candidate) {
+            appleCandidateCells.add(cell);
+        } else {
+            appleCandidateCells.remove(cell);
+        }
     }
 
     public void setApple(int x, int y) {
@@ -46,4 +224,192 @@ public class SnakeMap {
     public int getAppleY() {
         return appleY;
     }
+
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Moves the tail marker in the hash, so that positions that only differ in which end of the snake is the tail hash differently.
+     */
+    void moveTailMarker(int oldTailX, int oldTailY, int newTailX, int newTailY) {
+        if (oldTailX != newTailX || oldTailY != newTailY) {
+            hash ^= tailKey(oldTailX, oldTailY) ^ tailKey(newTailX, newTailY);
+        }
+    }
+
+    void toggleTailMarker(int tailX, int tailY) {
+        hash ^= tailKey(tailX, tailY);
+    }
+
+    /**
+     * Adds or removes the link from a body cell to the next cell towards the head in the hash.
+     * Links between segments that are still stacked on the same cell (after the start) are not hashed, the length accounts for them.
+     */
+    void toggleBodyLink(int fromX, int fromY, int toX, int toY) {
+        if (fromX != toX || fromY != toY) {
+            hash ^= linkKey(fromX, fromY, toX - fromX, toY - fromY);
+        }
+    }
+
+    void changeLength(int oldLength, int newLength) {
+        hash ^= lengthKey(oldLength) ^ lengthKey(newLength);
+    }
+
+    void toggleLength(int length) {
+        hash ^= lengthKey(length);
+    }
+
+    /**
+     * Restores the hash recorded before a change that was rolled back, see {@link SnakeGame#undo()}.
+     */
+    void restoreHash(long hash) {
+        this.hash = hash;
+    }
+
+    private static long zobristKey(int cell, byte tile) {
+        if (tile == EMPTY) {
+            return 0;
+        }
+        return mix(cell * 8L + tile);
+    }
+
+    private static long tailKey(int x, int y) {
+        return mix(((long) x << 32 | (y & 0xffffffffL)) * 8 + 7);
+    }
+
+    // links and lengths use negative values, so they never share a key with a tile or the tail marker
+    private static long linkKey(int x, int y, int dX, int dY) {
+        int direction = dX > 0 ? 0 : dX < 0 ? 1 : dY > 0 ? 2 : 3;
+        return mix(~(((long) x << 32 | (y & 0xffffffffL)) * 8 + direction));
+    }
+
+    private static long lengthKey(int length) {
+        return mix(~((long) length * 8 + 4));
+    }
+
+    // SplitMix64 finalizer, gives well distributed keys without storing a key table per map size
+    private static long mix(long value) {
+        long z = value * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public int countFreeCells() {
+        return freeCells.size();
+    }
+
+    /**
+     * Returns the free cell (as x + y * width) at the specified position, 0 <= position < {@link #countFreeCells()}.
+     */
+    public int getFreeCell(int position) {
+        return freeCells.get(position);
+    }
+
+    /**
+     * Returns the number of empty cells with at least 2 empty neighbours, or 0 if they are not tracked.
+     */
+    public int countAppleCandidateCells() {
+        return appleCandidateCells == null ? 0 : appleCandidateCells.size();
+    }
+
+    public int getAppleCandidateCell(int position) {
+        return appleCandidateCells.get(position);
+    }
+
+    /**
+     * Picks a random cell (as x + y * width) for an apple, uniformly among the empty cells with at least 2 empty neighbours
+     * or, if there are none, among all empty cells.
+     * Needs a single random draw, the map must track the apple candidates.
+     *
+     * @param randomBits 64 random bits, of which the upper 32 are used
+     * @return the picked cell or -1 if the map has no empty cells
+     */
+    public int pickRandomAppleCell(long randomBits) {
+        if (appleCandidateCells == null) {
+            throw new IllegalStateException("Apple candidates are not tracked");
+        }
+        if (appleCandidateCells.size() > 0) {
+            return appleCandidateCells.get(randomIndex(randomBits, appleCandidateCells.size()));
+        }
+
+        int freeCount = freeCells.size();
+        if (freeCount == 0) {
+            return -1;
+        }
+        return freeCells.get(randomIndex(randomBits, freeCount));
+    }
+
+    // maps the upper 32 random bits to [0, bound) with a multiplication, the bias of at most bound / 2^32 does not matter for apples
+    static int randomIndex(long randomBits, int bound) {
+        return (int) (((randomBits >>> 32) * bound) >>> 32);
+    }
+
+    public int countFreeNeighbours(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            int count = 0;
+            for (Move move : Move.values()) {
+                if (get(x + move.dX, y + move.dY) == Tile.Empty) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int index = index(x, y);
+        int count = 0;
+        if (tiles[index - stride] == EMPTY) {
+            count++;
+        }
+        if (tiles[index + stride] == EMPTY) {
+            count++;
+        }
+        if (tiles[index - 1] == EMPTY) {
+            count++;
+        }
+        if (tiles[index + 1] == EMPTY) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a bit mask with bit {@link Move#ordinal()} set for every move from (x, y) onto an empty or apple tile.
+     */
+    public int getValidMoveMask(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            int mask = 0;
+            for (Move move : Move.values()) {
+                if (Tile.isValidMove(get(x + move.dX, y + move.dY))) {
+                    mask |= 1 << move.ordinal();
+                }
+            }
+            return mask;
+        }
+
+        int index = index(x, y);
+        int mask = 0;
+        if (isValidMove(tiles[index - stride])) {
+            mask |= 1 << Move.Up.ordinal();
+        }
+        if (isValidMove(tiles[index + stride])) {
+            mask |= 1 << Move.Down.ordinal();
+        }
+        if (isValidMove(tiles[index - 1])) {
+            mask |= 1 << Move.Left.ordinal();
+        }
+        if (isValidMove(tiles[index + 1])) {
+            mask |= 1 << Move.Right.ordinal();
+        }
+        return mask;
+    }
+
+    private static boolean isValidMove(byte tile) {
+        return tile == EMPTY || tile == APPLE;
+    }
+
+    private int index(int x, int y) {
+        return (x + 1) + (y + 1) * stride;
+    }
 }
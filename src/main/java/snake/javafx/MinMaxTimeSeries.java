@@ -0,0 +1,123 @@
+package snake.javafx;
+
+import javafx.scene.chart.XYChart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size store of a time series for charts, keeping the minimum and maximum of every bucket at several resolutions.
+ *
+ * Level k has buckets of 2^k consecutive x values and keeps the last capacity buckets in a ring,
+ * so adding a value costs one update per level and the memory does not grow with the number of values.
+ * A snapshot uses the finest level that covers the whole series with at most maxPoints / 2 buckets
+ * and returns the minimum and maximum of every bucket in x order.
+ *
+ * The x values must be added in ascending order. Thread-safe.
+ */
+class MinMaxTimeSeries {
+    private static final int LEVELS = 32;
+
+    private final int capacity;
+
+    // indexed by level * capacity + slot
+    private final long[] bucketIds;
+    private final long[] minXs;
+    private final long[] maxXs;
+    private final double[] mins;
+    private final double[] maxs;
+
+    private long firstX;
+    private long lastX;
+    private long count;
+
+    MinMaxTimeSeries(int capacity) {
+        this.capacity = capacity;
+        bucketIds = new long[LEVELS * capacity];
+        minXs = new long[LEVELS * capacity];
+        maxXs = new long[LEVELS * capacity];
+        mins = new double[LEVELS * capacity];
+        maxs = new double[LEVELS * capacity];
+        clear();
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < bucketIds.length; i++) {
+            bucketIds[i] = -1;
+        }
+        count = 0;
+    }
+
+    /**
+     * Adds a value, NaN values are ignored.
+     */
+    synchronized void add(long x, double y) {
+        if (Double.isNaN(y)) {
+            return;
+        }
+        if (count == 0) {
+            firstX = x;
+            lastX = x;
+        }
+        lastX = Math.max(lastX, x);
+        count++;
+
+        for (int level = 0; level < LEVELS; level++) {
+            long bucketId = x >> level;
+            int slot = level * capacity + (int) (bucketId % capacity);
+            if (bucketIds[slot] < bucketId) {
+                bucketIds[slot] = bucketId;
+                minXs[slot] = x;
+                maxXs[slot] = x;
+                mins[slot] = y;
+                maxs[slot] = y;
+            } else if (bucketIds[slot] == bucketId) {
+                if (y < mins[slot]) {
+                    mins[slot] = y;
+                    minXs[slot] = x;
+                }
+                if (y > maxs[slot]) {
+                    maxs[slot] = y;
+                    maxXs[slot] = x;
+                }
+            }
+        }
+    }
+
+    synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns at most maxPoints chart points covering the whole series.
+     */
+    synchronized List<XYChart.Data<Number, Number>> snapshot(int maxPoints) {
+        List<XYChart.Data<Number, Number>> data = new ArrayList<>(maxPoints);
+        if (count == 0) {
+            return data;
+        }
+
+        int maxBuckets = Math.max(1, Math.min(capacity, maxPoints / 2));
+        int level = 0;
+        while (level < LEVELS - 1 && (lastX >> level) - (firstX >> level) + 1 > maxBuckets) {
+            level++;
+        }
+
+        for (long bucketId = firstX >> level; bucketId <= lastX >> level; bucketId++) {
+            int slot = level * capacity + (int) (bucketId % capacity);
+            if (bucketIds[slot] != bucketId) {
+                continue;
+            }
+            if (minXs[slot] == maxXs[slot]) {
+                data.add(new XYChart.Data<>(minXs[slot], mins[slot]));
+            } else if (minXs[slot] < maxXs[slot]) {
+                data.add(new XYChart.Data<>(minXs[slot], mins[slot]));
+                data.add(new XYChart.Data<>(maxXs[slot], maxs[slot]));
+            } else {
+                data.add(new XYChart.Data<>(maxXs[slot], maxs[slot]));
+                data.add(new XYChart.Data<>(minXs[slot], mins[slot]));
+            }
+        }
+        return data;
+    }
+}
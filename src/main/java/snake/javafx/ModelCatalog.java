@@ -0,0 +1,279 @@
+package snake.javafx;
+
+import com.google.gson.Gson;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import snake.controller.DeeplearningSnakeController;
+import snake.controller.SnakeController;
+import snake.controller.TrainingLog;
+import snake.domain.Move;
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The saved networks in a directory.
+ *
+ * Creating the catalog only reads the small {@code .snake} configuration of every network,
+ * the {@code .dl4j} networks are restored on a background pool when an entry is loaded or first used
+ * and the {@code .train} logs are opened when they are first needed.
+ */
+class ModelCatalog {
+    private static final int LOADER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final ExecutorService loaderPool = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    ModelCatalog(File dir) {
+        File[] files = dir.listFiles((fileDir, fileName) -> fileName.toLowerCase().endsWith(".snake"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            name = name.substring(0, name.length() - ".snake".length());
+            DeeplearningSnakeController.DeeplearningConfiguration deeplearningConfiguration = DeeplearningSnakeController.loadDeeplearningConfiguration(file.getPath());
+            entries.add(new Entry(name, deeplearningConfiguration));
+        }
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Adds an entry for a network that is already created.
+     */
+    Entry add(DeeplearningSnakeController controller) {
+        Entry entry = new Entry(controller.getName(), controller.getDeeplearningConfiguration());
+        entry.future = CompletableFuture.completedFuture(controller);
+        entry.displayName.set(controller.toString());
+        entries.add(entry);
+        return entry;
+    }
+
+    private static void convertTrainingData(String trainFileName) {
+        SnakeJavafxApp.TrainingData trainingData;
+        try (Reader reader = new FileReader(trainFileName)) {
+            trainingData = new Gson().fromJson(reader, SnakeJavafxApp.TrainingData.class);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (trainingData == null) {
+            trainingData = new SnakeJavafxApp.TrainingData();
+        }
+
+        Map<Integer, TrainingLog.Record> records = new TreeMap<>();
+        if (trainingData.scoreData != null) {
+            trainingData.scoreData.forEach((epoch, value) -> toRecord(records, epoch).score = value);
+        }
+        if (trainingData.statisticsDeadData != null) {
+            trainingData.statisticsDeadData.forEach((epoch, value) -> toRecord(records, epoch).dead = value);
+        }
+        if (trainingData.statisticsEatenData != null) {
+            trainingData.statisticsEatenData.forEach((epoch, value) -> toRecord(records, epoch).eaten = value);
+        }
+
+        String tempFileName = trainFileName + ".tmp";
+        try {
+            Files.deleteIfExists(Paths.get(tempFileName));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try (TrainingLog trainingLog = TrainingLog.open(tempFileName)) {
+            for (TrainingLog.Record record : records.values()) {
+                trainingLog.append(record);
+            }
+            trainingLog.flush();
+        }
+        try {
+            Files.move(Paths.get(tempFileName), Paths.get(trainFileName), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static TrainingLog.Record toRecord(Map<Integer, TrainingLog.Record> records, int epoch) {
+        return records.computeIfAbsent(epoch, key -> {
+            TrainingLog.Record record = new TrainingLog.Record();
+            record.epoch = key;
+            return record;
+        });
+    }
+
+    /**
+     * A saved network, which can be used as {@link SnakeController} before it is restored.
+     * Using it blocks until the network is restored.
+     */
+    class Entry implements SnakeController {
+        private final String name;
+        private final DeeplearningSnakeController.DeeplearningConfiguration deeplearningConfiguration;
+        private final ReadOnlyStringWrapper displayName = new ReadOnlyStringWrapper();
+
+        // load() and isLoaded() are called on the FX thread, so they never wait for the training log I/O under logLock
+        private final Object logLock = new Object();
+
+        private volatile CompletableFuture<DeeplearningSnakeController> future;
+        private TrainingLog trainingLog;
+        private TrainingHistory trainingHistory;
+
+        private Entry(String name, DeeplearningSnakeController.DeeplearningConfiguration deeplearningConfiguration) {
+            this.name = name;
+            this.deeplearningConfiguration = deeplearningConfiguration;
+            displayName.set("AI " + name);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        DeeplearningSnakeController.DeeplearningConfiguration getDeeplearningConfiguration() {
+            return deeplearningConfiguration;
+        }
+
+        /**
+         * The name shown in lists, including the loading state, only changed on the FX thread.
+         */
+        ReadOnlyStringProperty displayNameProperty() {
+            return displayName.getReadOnlyProperty();
+        }
+
+        /**
+         * Starts restoring the network on the loader pool, if not started yet.
+         */
+        synchronized CompletableFuture<DeeplearningSnakeController> load() {
+            if (future == null) {
+                setDisplayName("AI " + name + " (loading)");
+                future = CompletableFuture.supplyAsync(() -> DeeplearningSnakeController.create(name, deeplearningConfiguration), loaderPool);
+                future.whenComplete((controller, exception) -> {
+                    setDisplayName(exception == null ? controller.toString() : "AI " + name + " (failed)");
+                });
+            }
+            return future;
+        }
+
+        boolean isLoaded() {
+            CompletableFuture<DeeplearningSnakeController> future = this.future;
+            return future != null && future.isDone() && !future.isCompletedExceptionally();
+        }
+
+        /**
+         * Returns the restored network, blocking until it is restored.
+         */
+        DeeplearningSnakeController getController() {
+            try {
+                return load().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        /**
+         * Writes a checkpoint of the network and flushes the training log on the loader pool.
+         * The parameters are copied between two fits of a running training.
+         */
+        CompletableFuture<Void> save() {
+            return load().thenAcceptAsync(controller -> {
+                controller.saveAsync();
+                getTrainingLog().flush();
+            }, loaderPool);
+        }
+
+        /**
+         * Returns the training log, converting a {@code .train} file in the old JSON format the first time.
+         */
+        TrainingLog getTrainingLog() {
+            synchronized (logLock) {
+                if (trainingLog == null) {
+                    String trainFileName = name + ".train";
+                    if (new File(trainFileName).exists() && !TrainingLog.isTrainingLog(trainFileName)) {
+                        convertTrainingData(trainFileName);
+                    }
+                    trainingLog = TrainingLog.open(trainFileName);
+                }
+                return trainingLog;
+            }
+        }
+
+        /**
+         * Returns the history for the charts, filled from the training log the first time.
+         */
+        TrainingHistory getTrainingHistory() {
+            synchronized (logLock) {
+                if (trainingHistory == null) {
+                    trainingHistory = TrainingHistory.load(getTrainingLog());
+                }
+                return trainingHistory;
+            }
+        }
+
+        /**
+         * Returns the history for the charts, filling it on the loader pool if needed.
+         */
+        CompletableFuture<TrainingHistory> loadTrainingHistory() {
+            return CompletableFuture.supplyAsync(this::getTrainingHistory, loaderPool);
+        }
+
+        /**
+         * Writes the training log as JSON to {@code <name>.train.json} on the loader pool.
+         */
+        CompletableFuture<Void> exportTrainingJson() {
+            return CompletableFuture.runAsync(() -> getTrainingLog().exportJson(name + ".train.json"), loaderPool);
+        }
+
+        private void setDisplayName(String text) {
+            if (Platform.isFxApplicationThread()) {
+                displayName.set(text);
+            } else {
+                Platform.runLater(() -> displayName.set(text));
+            }
+        }
+
+        @Override
+        public Move getMove(Snake snake, SnakeMap snakeMap) {
+            return getController().getMove(snake, snakeMap);
+        }
+
+        @Override
+        public SnakeController fork(SplittableRandom random) {
+            return getController().fork(random);
+        }
+
+        @Override
+        public void updateFork(SnakeController fork) {
+            getController().updateFork(fork);
+        }
+
+        @Override
+        public String toString() {
+            return displayName.get();
+        }
+    }
+}
@@ -53,6 +53,11 @@ public class SnakeJavafxApp extends Application {
     private static final DecimalFormat INTEGER_FORMAT = new DecimalFormat("#0");
     private static final DecimalFormat DOUBLE_FORMAT = new DecimalFormat("#0.########");
 
+    private static final int TRAINING_PREFETCH_DEPTH = 4;
+    private static final double TEST_INTERVAL_WIDTH = 0.05;
+    private static final int TEST_MAX_STEPS = 5000;
+    private static final int CHART_POINTS = 400;
+
     private static final Format TOSTRING_FORMAT = new Format() {
         @Override
         public StringBuffer format(Object obj, @NotNull StringBuffer toAppendTo, @NotNull FieldPosition pos) {
@@ -85,13 +90,16 @@ public class SnakeJavafxApp extends Application {
     private IntegerProperty stepsProperty = new SimpleIntegerProperty();
     private IntegerProperty hungerProperty = new SimpleIntegerProperty();
 
-    private ListProperty<DeeplearningSnakeController> deeplearningControllerListProperty = new SimpleListProperty<>(FXCollections.observableArrayList());
-    private ObjectProperty<DeeplearningSnakeController> deeplearningControllerProperty = new SimpleObjectProperty<>();
+    private ModelCatalog modelCatalog;
+    private ListProperty<ModelCatalog.Entry> deeplearningControllerListProperty = new SimpleListProperty<>(FXCollections.observableArrayList());
+    private ObjectProperty<ModelCatalog.Entry> deeplearningControllerProperty = new SimpleObjectProperty<>();
     private ObjectProperty<SnakeController> trainTeacherControllerProperty = new SimpleObjectProperty<>();
     private ObjectProperty<WallBuilder> trainWallBuilderProperty = new SimpleObjectProperty<>();
     private IntegerProperty epochProperty = new SimpleIntegerProperty();
 
-    private ListView<DeeplearningSnakeController> masterDeeplearningControllerListView;
+    private ListView<ModelCatalog.Entry> masterDeeplearningControllerListView;
+
+    private final UiUpdateBus uiUpdateBus = new UiUpdateBus();
 
     @Override
     public void start(Stage primaryStage) {
@@ -104,6 +112,7 @@ public class SnakeJavafxApp extends Application {
 
         mainTabPane.getTabs().add(new Tab("Play", createPlayView()));
         mainTabPane.getTabs().add(new Tab("AI", createAiView()));
+        uiUpdateBus.start();
 
         primaryStage.setScene(scene);
         primaryStage.show();
@@ -143,8 +152,14 @@ public class SnakeJavafxApp extends Application {
         ComboBox<SnakeController> controllerComboBox = new ComboBox<>();
         toolbar.getChildren().add(controllerComboBox);
         Bindings.bindBidirectional(controllerComboBox.itemsProperty(), controllerListProperty);
+        setControllerCells(controllerComboBox);
         controllerComboBox.valueProperty().bindBidirectional(controllerProperty);
-        controllerProperty.addListener((observable, oldValue, newValue) -> resetSimulation());
+        controllerProperty.addListener((observable, oldValue, newValue) -> {
+            if (newValue instanceof ModelCatalog.Entry) {
+                ((ModelCatalog.Entry) newValue).load();
+            }
+            resetSimulation();
+        });
 
         Button resetButton = new Button("Reset");
         toolbar.getChildren().add(resetButton);
@@ -182,23 +197,20 @@ public class SnakeJavafxApp extends Application {
         return borderPane;
     }
 
+    // only the configurations are read here, the networks are restored when they are selected or used
     private void addControllersFromFiles() {
-        File dir = new File(".");
-        File[] files = dir.listFiles(new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                return name.toLowerCase().endsWith(".snake");
-            }
-        });
-        for (File file : files) {
-            String name = file.getName();
-            name = name.substring(0, name.length() - ".snake".length());
-            DeeplearningSnakeController controller = DeeplearningSnakeController.create(name);
-
-            controllerListProperty.add(controller);
-            deeplearningControllerListProperty.add(controller);
+        modelCatalog = new ModelCatalog(new File("."));
+        for (ModelCatalog.Entry entry : modelCatalog.getEntries()) {
+            controllerListProperty.add(entry);
+            deeplearningControllerListProperty.add(entry);
         }
     }
 
+    private <T> void setControllerCells(ComboBox<T> comboBox) {
+        comboBox.setCellFactory(listView -> new ControllerListCell<>());
+        comboBox.setButtonCell(new ControllerListCell<>());
+    }
+
     private Node createAiView() {
         BorderPane masterDetailPane = new BorderPane();
 
@@ -210,6 +222,7 @@ public class SnakeJavafxApp extends Application {
         masterDeeplearningControllerListView = new ListView<>();
         masterDetailPane.setLeft(masterDeeplearningControllerListView);
         Bindings.bindBidirectional(masterDeeplearningControllerListView.itemsProperty(), deeplearningControllerListProperty);
+        masterDeeplearningControllerListView.setCellFactory(listView -> new ControllerListCell<>());
         deeplearningControllerProperty.bind(masterDeeplearningControllerListView.getSelectionModel().selectedItemProperty());
 
         BorderPane editorPane = new BorderPane();
@@ -222,6 +235,7 @@ public class SnakeJavafxApp extends Application {
         editorPane.setLeft(propertiesPane);
 
         StringProperty nameProperty = new SimpleStringProperty();
+        ObjectProperty<DeeplearningSnakeController.FeatureEncoding> featureEncodingProperty = new SimpleObjectProperty<>();
         IntegerProperty inputWidthProperty = new SimpleIntegerProperty();
         StringProperty hiddenLayerSizesProperty = new SimpleStringProperty();
         ObjectProperty<WeightInit> defaultWeightInitProperty = new SimpleObjectProperty<>();
@@ -235,6 +249,7 @@ public class SnakeJavafxApp extends Application {
 
         int rowIndex = 0;
         addLabel(propertiesPane, rowIndex++, "Name:", nameProperty);
+        addLabel(propertiesPane, rowIndex++, "Feature Encoding:", featureEncodingProperty, TOSTRING_FORMAT);
         addLabel(propertiesPane, rowIndex++, "Input Width:", inputWidthProperty, INTEGER_FORMAT);
         addLabel(propertiesPane, rowIndex++, "Hidden Layers:", hiddenLayerSizesProperty);
         addLabel(propertiesPane, rowIndex++, "Default Weight Init:", defaultWeightInitProperty, TOSTRING_FORMAT);
@@ -247,7 +262,7 @@ public class SnakeJavafxApp extends Application {
         addLabel(propertiesPane, rowIndex++, "Epsilon:", epsilonProperty, TOSTRING_FORMAT);
 
         addLabel(propertiesPane, rowIndex++, "");
-        addComboBox(propertiesPane, rowIndex++, "Teacher:", controllerListProperty, trainTeacherControllerProperty);
+        setControllerCells(addComboBox(propertiesPane, rowIndex++, "Teacher:", controllerListProperty, trainTeacherControllerProperty));
         addComboBox(propertiesPane, rowIndex++, "Walls:", wallBuilderListProperty, trainWallBuilderProperty);
 
         addLabel(propertiesPane, rowIndex++, "");
@@ -264,6 +279,10 @@ public class SnakeJavafxApp extends Application {
         propertiesPane.add(saveButton, 1, rowIndex);
         rowIndex++;
 
+        Button exportButton = new Button("Export Training JSON");
+        propertiesPane.add(exportButton, 1, rowIndex);
+        rowIndex++;
+
         // line charts
         VBox chartsPane = new VBox();
         editorPane.setCenter(chartsPane);
@@ -272,6 +291,17 @@ public class SnakeJavafxApp extends Application {
         ObservableList<XYChart.Data<Number, Number>> statisticsDeadData = addLineChart(chartsPane, "Dead %");
         ObservableList<XYChart.Data<Number, Number>> statisticsEatenData = addLineChart(chartsPane, "Eaten %");
 
+        // the charts are replaced with a snapshot of the latest history at most once per pulse
+        UiUpdateBus.Channel<TrainingUpdate> trainingUpdates = uiUpdateBus.channel(update -> {
+            if (deeplearningControllerProperty.get() != update.entry) {
+                return;
+            }
+            scoreData.setAll(update.trainingHistory.score.snapshot(CHART_POINTS));
+            statisticsDeadData.setAll(update.trainingHistory.dead.snapshot(CHART_POINTS));
+            statisticsEatenData.setAll(update.trainingHistory.eaten.snapshot(CHART_POINTS));
+            epochProperty.setValue(update.nextEpoch);
+        });
+
         // actions
         newButton.addEventHandler(ActionEvent.ACTION, event -> {
             showNewAiDialog();
@@ -283,21 +313,33 @@ public class SnakeJavafxApp extends Application {
             startTrainButton.setDisable(true);
             stopTrainButton.setDisable(false);
             new Thread(() -> {
+                DeeplearningSnakeController trainingController = null;
                 while (training.get()) {
-                    DeeplearningSnakeController controller = deeplearningControllerProperty.get();
+                    ModelCatalog.Entry entry = deeplearningControllerProperty.get();
+                    DeeplearningSnakeController controller = entry.getController();
+                    if (controller != trainingController) {
+                        if (trainingController != null) {
+                            trainingController.setTrainingPrefetch(0);
+                        }
+                        controller.setTrainingPrefetch(TRAINING_PREFETCH_DEPTH);
+                        trainingController = controller;
+                    }
+                    long startNanos = System.nanoTime();
                     double score = controller.train(1, trainTeacherControllerProperty.get(), trainWallBuilderProperty.get());
-                    DeeplearningSnakeController.Statistics statistics = controller.test();
-                    Platform.runLater(() -> {
-                        int epoch = epochProperty.get();
-                        scoreData.add(new XYChart.Data<>(epoch, score));
-                        statisticsDeadData.add(new XYChart.Data<>(epoch, statistics.dead * 100));
-                        statisticsEatenData.add(new XYChart.Data<>(epoch, statistics.eaten * 100));
-                        reduceData(scoreData, epoch);
-                        reduceData(statisticsDeadData, epoch);
-                        reduceData(statisticsEatenData, epoch);
-
-                        epochProperty.setValue(epoch + 1);
-                    });
+                    double samplesPerSecond = controller.getTrainingSampleCount() / ((System.nanoTime() - startNanos) / 1e9);
+                    DeeplearningSnakeController.Statistics statistics = controller.test(TEST_INTERVAL_WIDTH, TEST_MAX_STEPS);
+
+                    TrainingLog trainingLog = entry.getTrainingLog();
+                    int epoch = trainingLog.getNextEpoch();
+                    trainingLog.append(epoch, score, statistics.dead * 100, statistics.eaten * 100, samplesPerSecond);
+                    TrainingHistory trainingHistory = entry.getTrainingHistory();
+                    trainingHistory.add(epoch, score, statistics.dead * 100, statistics.eaten * 100);
+                    if (deeplearningControllerProperty.get() == entry) {
+                        trainingUpdates.post(new TrainingUpdate(entry, trainingHistory, epoch + 1));
+                    }
+                }
+                if (trainingController != null) {
+                    trainingController.setTrainingPrefetch(0);
                 }
                 Platform.runLater(() -> {
                     startTrainButton.setDisable(false);
@@ -310,15 +352,28 @@ public class SnakeJavafxApp extends Application {
         });
         saveButton.addEventHandler(ActionEvent.ACTION, event -> {
             saveButton.setDisable(true);
-            DeeplearningSnakeController controller = deeplearningControllerProperty.get();
-            controller.save();
-            saveTraining(controller.getName(), epochProperty.get(), scoreData, statisticsDeadData, statisticsEatenData);
-            saveButton.setDisable(false);
+            deeplearningControllerProperty.get().save().whenComplete((result, exception) -> {
+                if (exception != null) {
+                    exception.printStackTrace();
+                }
+                Platform.runLater(() -> saveButton.setDisable(false));
+            });
+        });
+        exportButton.addEventHandler(ActionEvent.ACTION, event -> {
+            exportButton.setDisable(true);
+            deeplearningControllerProperty.get().exportTrainingJson().whenComplete((result, exception) -> {
+                if (exception != null) {
+                    exception.printStackTrace();
+                }
+                Platform.runLater(() -> exportButton.setDisable(false));
+            });
         });
 
         deeplearningControllerProperty.addListener((observable, oldValue, newValue) -> {
-            nameProperty.set(newValue.toString());
+            newValue.load();
+            nameProperty.set(newValue.getName());
 
+            featureEncodingProperty.set(newValue.getDeeplearningConfiguration().featureEncoding);
             inputWidthProperty.set(newValue.getDeeplearningConfiguration().inputWidth);
             hiddenLayerSizesProperty.set(toString(newValue.getDeeplearningConfiguration().hiddenLayerSizes));
             defaultWeightInitProperty.set(newValue.getDeeplearningConfiguration().defaultWeightInit);
@@ -330,11 +385,12 @@ public class SnakeJavafxApp extends Application {
             momentumProperty.set(newValue.getDeeplearningConfiguration().momentum);
             epsilonProperty.set(newValue.getDeeplearningConfiguration().epsilon);
 
-            TrainingData trainingData = loadTrainingData(newValue.getName());
-            epochProperty.setValue(trainingData.epoch);
-            trainingData.fillScoreDataInto(scoreData);
-            trainingData.fillStatisticsDeadDataDataInto(statisticsDeadData);
-            trainingData.fillStatisticsEatenDataDataInto(statisticsEatenData);
+            scoreData.clear();
+            statisticsDeadData.clear();
+            statisticsEatenData.clear();
+            newValue.loadTrainingHistory().thenAccept(trainingHistory -> {
+                trainingUpdates.post(new TrainingUpdate(newValue, trainingHistory, newValue.getTrainingLog().getNextEpoch()));
+            });
         });
 
         masterDeeplearningControllerListView.getSelectionModel().select(0);
@@ -356,40 +412,6 @@ public class SnakeJavafxApp extends Application {
                 .collect(Collectors.toList());
     }
 
-    private void saveTraining(String name, int epoch, ObservableList<XYChart.Data<Number, Number>> scoreData, ObservableList<XYChart.Data<Number, Number>> statisticsDeadData, ObservableList<XYChart.Data<Number, Number>> statisticsEatenData) {
-        String trainFileName = name + ".train";
-
-        try (FileWriter writer = new FileWriter(trainFileName)) {
-            TrainingData trainingData = new TrainingData(epoch, scoreData, statisticsDeadData, statisticsEatenData);
-
-            GsonBuilder gsonBuilder = new GsonBuilder();
-            Gson gson = gsonBuilder.create();
-            String json = gson.toJson(trainingData);
-
-            writer.write(json);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private TrainingData loadTrainingData(String name) {
-        String trainFileName = name + ".train";
-
-        File trainFile = new File(trainFileName);
-        if (trainFile.exists()) {
-            try {
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                Gson gson = gsonBuilder.create();
-                TrainingData trainingData = gson.fromJson(new FileReader(trainFile), TrainingData.class);
-                return trainingData;
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        return new TrainingData();
-    }
-
     private void showNewAiDialog() {
         Dialog<DeeplearningSnakeController> dialog = new Dialog<>();
         dialog.setTitle("New AI");
@@ -400,13 +422,19 @@ public class SnakeJavafxApp extends Application {
         DeeplearningSnakeController.DeeplearningConfiguration defaultConfiguration = new DeeplearningSnakeController.DeeplearningConfiguration();
 
         StringProperty nameProperty = new SimpleStringProperty();
+        ListProperty<DeeplearningSnakeController.FeatureEncoding> featureEncodingListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(DeeplearningSnakeController.FeatureEncoding.values()));
         ListProperty<Integer> inputWidthListProperty = new SimpleListProperty<>(FXCollections.observableArrayList());
+        ListProperty<Integer> inferenceBatchSizeListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(0, 4, 8, 16, 32, 64));
+        ListProperty<Integer> inferenceCacheBitsListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(0, 10, 12, 14, 16, 18, 20));
         ListProperty<Activation> activationListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(Activation.values()));
         ListProperty<WeightInit> weightInitListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(WeightInit.values()));
         ListProperty<LossFunctions.LossFunction> lossFunctionListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(LossFunctions.LossFunction.values()));
         ListProperty<DeeplearningSnakeController.Updater> updaterListProperty = new SimpleListProperty<>(FXCollections.observableArrayList(DeeplearningSnakeController.Updater.values()));
 
+        ObjectProperty<DeeplearningSnakeController.FeatureEncoding> featureEncodingProperty = new SimpleObjectProperty<>(defaultConfiguration.featureEncoding);
         ObjectProperty<Integer> inputWidthProperty = new SimpleObjectProperty<>(defaultConfiguration.inputWidth);
+        ObjectProperty<Integer> inferenceBatchSizeProperty = new SimpleObjectProperty<>(defaultConfiguration.inferenceBatchSize);
+        ObjectProperty<Integer> inferenceCacheBitsProperty = new SimpleObjectProperty<>(defaultConfiguration.inferenceCacheBits);
         StringProperty hiddenLayerSizesProperty = new SimpleStringProperty(toString(defaultConfiguration.hiddenLayerSizes));
         ObjectProperty<Activation> defaultActivationProperty = new SimpleObjectProperty<>(defaultConfiguration.defaultActivation);
         ObjectProperty<WeightInit> defaultWeightInitProperty = new SimpleObjectProperty<>(defaultConfiguration.defaultWeightInit);
@@ -430,7 +458,10 @@ public class SnakeJavafxApp extends Application {
 
         int rowIndex = 0;
         TextField nameTextField = addTextField(gridPane, rowIndex++, "Name:", nameProperty);
+        addComboBox(gridPane, rowIndex++, "Feature Encoding:", featureEncodingListProperty, featureEncodingProperty);
         addComboBox(gridPane, rowIndex++, "Input Width:", inputWidthListProperty, inputWidthProperty);
+        addComboBox(gridPane, rowIndex++, "Inference Cache Bits:", inferenceCacheBitsListProperty, inferenceCacheBitsProperty);
+        addComboBox(gridPane, rowIndex++, "Inference Batch Size:", inferenceBatchSizeListProperty, inferenceBatchSizeProperty);
         addTextField(gridPane, rowIndex++, "Hidden Layers:", hiddenLayerSizesProperty);
         addComboBox(gridPane, rowIndex++, "Default Activation:", activationListProperty, defaultActivationProperty);
         addComboBox(gridPane, rowIndex++, "Default Weight Init:", weightInitListProperty, defaultWeightInitProperty);
@@ -448,7 +479,10 @@ public class SnakeJavafxApp extends Application {
 
         Supplier<DeeplearningSnakeController> createDeeplearningSnakeController = () -> {
             DeeplearningSnakeController.DeeplearningConfiguration configuration = new DeeplearningSnakeController.DeeplearningConfiguration();
+            configuration.featureEncoding = featureEncodingProperty.get();
             configuration.inputWidth = inputWidthProperty.get();
+            configuration.inferenceCacheBits = inferenceCacheBitsProperty.get();
+            configuration.inferenceBatchSize = inferenceBatchSizeProperty.get();
             configuration.hiddenLayerSizes = toList(hiddenLayerSizesProperty.get());
             configuration.defaultActivation = defaultActivationProperty.get();
             configuration.defaultWeightInit = defaultWeightInitProperty.get();
@@ -513,42 +547,13 @@ public class SnakeJavafxApp extends Application {
         Optional<DeeplearningSnakeController> result = dialog.showAndWait();
         result.ifPresent(controller -> {
             controller.save();
-            controllerListProperty.add(controller);
-            deeplearningControllerListProperty.add(controller);
-            masterDeeplearningControllerListView.getSelectionModel().select(controller);
+            ModelCatalog.Entry entry = modelCatalog.add(controller);
+            controllerListProperty.add(entry);
+            deeplearningControllerListProperty.add(entry);
+            masterDeeplearningControllerListView.getSelectionModel().select(entry);
         });
     }
 
-    private void reduceData(ObservableList<XYChart.Data<Number, Number>> data, int epoch) {
-        for (int step = 100000 ; step >= 1000 ; step /= 10) {
-            if (epoch >= step && epoch % step == 0) {
-                reduceDataToStep(data, step / 100);
-                return;
-            }
-        }
-    }
-
-    private void reduceDataToStep(ObservableList<XYChart.Data<Number, Number>> data, int reduceToStep) {
-        Iterator<XYChart.Data<Number, Number>> iterator = data.iterator();
-        Double maxYValue = null;
-        Double minYValue = null;
-        while (iterator.hasNext()) {
-            XYChart.Data<Number, Number> singleData = iterator.next();
-            double yValue = singleData.getYValue().doubleValue();
-            maxYValue = maxYValue == null ? yValue : Math.max(maxYValue, yValue);
-            minYValue = minYValue == null ? yValue : Math.min(minYValue, yValue);
-            if (singleData.getXValue().intValue() % reduceToStep == reduceToStep - 1) {
-                singleData.setYValue(minYValue);
-                minYValue = null;
-            } else if (singleData.getXValue().intValue() % reduceToStep == 0) {
-                singleData.setYValue(maxYValue);
-                maxYValue = null;
-            } else {
-                iterator.remove();
-            }
-        }
-    }
-
     @NotNull
     private ObservableList<XYChart.Data<Number, Number>> addLineChart(VBox chartsPane, String yAxisLabel) {
         NumberAxis xAxis = new NumberAxis();
@@ -660,6 +665,13 @@ public class SnakeJavafxApp extends Application {
     }
 
     private void stepSimulation() {
+        SnakeController controller = controllerProperty.get();
+        if (controller instanceof ModelCatalog.Entry && !((ModelCatalog.Entry) controller).isLoaded()) {
+            statusProperty.setValue("Loading");
+            return;
+        }
+        statusProperty.setValue("Alive");
+
         boolean alive = game.step();
         if (!alive) {
             stopSimulation();
@@ -747,6 +759,37 @@ public class SnakeJavafxApp extends Application {
         launch(args);
     }
 
+    private static class TrainingUpdate {
+        final ModelCatalog.Entry entry;
+        final TrainingHistory trainingHistory;
+        final int nextEpoch;
+
+        TrainingUpdate(ModelCatalog.Entry entry, TrainingHistory trainingHistory, int nextEpoch) {
+            this.entry = entry;
+            this.trainingHistory = trainingHistory;
+            this.nextEpoch = nextEpoch;
+        }
+    }
+
+    // shows the loading state of catalog entries
+    private static class ControllerListCell<T> extends ListCell<T> {
+        @Override
+        protected void updateItem(T item, boolean empty) {
+            super.updateItem(item, empty);
+            textProperty().unbind();
+            if (empty || item == null) {
+                setText(null);
+            } else if (item instanceof ModelCatalog.Entry) {
+                textProperty().bind(((ModelCatalog.Entry) item).displayNameProperty());
+            } else {
+                setText(item.toString());
+            }
+        }
+    }
+
+    /**
+     * The JSON format of the {@code .train} files before the {@link TrainingLog}, only read to convert old files.
+     */
     public static class TrainingData {
         public int epoch;
         public Map<Integer, Double> scoreData;
@@ -756,44 +799,5 @@ public class SnakeJavafxApp extends Application {
         public TrainingData() {
             // empty
         }
-
-        public TrainingData(int epoch, ObservableList<XYChart.Data<Number, Number>> scoreData, ObservableList<XYChart.Data<Number, Number>> statisticsDeadData, ObservableList<XYChart.Data<Number, Number>> statisticsEatenData) {
-            this.epoch = epoch;
-            this.scoreData = toMapIntegerDouble(scoreData);
-            this.statisticsDeadData = toMapIntegerDouble(statisticsDeadData);
-            this.statisticsEatenData = toMapIntegerDouble(statisticsEatenData);
-        }
-
-        public void fillScoreDataInto(ObservableList<XYChart.Data<Number, Number>> data) {
-            fillMapInto(scoreData, data);
-        }
-
-        public void fillStatisticsDeadDataDataInto(ObservableList<XYChart.Data<Number, Number>> data) {
-            fillMapInto(statisticsDeadData, data);
-        }
-
-        public void fillStatisticsEatenDataDataInto(ObservableList<XYChart.Data<Number, Number>> data) {
-            fillMapInto(statisticsEatenData, data);
-        }
-
-        private Map<Integer, Double> toMapIntegerDouble(ObservableList<XYChart.Data<Number, Number>> data) {
-            HashMap<Integer, Double> map = new HashMap<>();
-
-            for (XYChart.Data<Number, Number> datum : data) {
-                map.put(datum.getXValue().intValue(), datum.getYValue().doubleValue());
-            }
-
-            return map;
-        }
-
-        private void fillMapInto(Map<Integer, Double> map, ObservableList<XYChart.Data<Number, Number>> data) {
-            data.clear();
-            if (map != null) {
-                for (Map.Entry<Integer, Double> entry : map.entrySet()) {
-                    data.add(new XYChart.Data<>(entry.getKey(), entry.getValue()));
-                }
-            }
-        }
-
     }
 }
@@ -0,0 +1,31 @@
+package snake.javafx;
+
+import snake.controller.TrainingLog;
+
+/**
+ * The score and test statistics of a network per epoch, as shown in the training charts.
+ */
+class TrainingHistory {
+    private static final int BUCKETS_PER_LEVEL = 256;
+
+    // points read from the training log to fill the history, older epochs are only available at this resolution
+    private static final int LOG_POINTS = 4 * BUCKETS_PER_LEVEL;
+
+    final MinMaxTimeSeries score = new MinMaxTimeSeries(BUCKETS_PER_LEVEL);
+    final MinMaxTimeSeries dead = new MinMaxTimeSeries(BUCKETS_PER_LEVEL);
+    final MinMaxTimeSeries eaten = new MinMaxTimeSeries(BUCKETS_PER_LEVEL);
+
+    static TrainingHistory load(TrainingLog trainingLog) {
+        TrainingHistory trainingHistory = new TrainingHistory();
+        for (TrainingLog.Record record : trainingLog.query(0, Integer.MAX_VALUE, LOG_POINTS)) {
+            trainingHistory.add(record.epoch, record.score, record.dead, record.eaten);
+        }
+        return trainingHistory;
+    }
+
+    void add(int epoch, double score, double dead, double eaten) {
+        this.score.add(epoch, score);
+        this.dead.add(epoch, dead);
+        this.eaten.add(epoch, eaten);
+    }
+}
@@ -0,0 +1,77 @@
+package snake.javafx;
+
+import javafx.animation.AnimationTimer;
+import snake.metrics.Counter;
+import snake.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Passes updates from background threads to the FX thread without flooding the FX event queue.
+ *
+ * Every channel holds only the latest posted value, posting replaces a value that was not applied yet
+ * and never blocks. An {@link AnimationTimer} applies the latest value of every channel at most once per pulse.
+ */
+class UiUpdateBus {
+    private static final Counter postedCounter = Metrics.counter("ui.updates.posted");
+    private static final Counter appliedCounter = Metrics.counter("ui.updates.applied");
+
+    private final List<Channel<?>> channels = new CopyOnWriteArrayList<>();
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            for (Channel<?> channel : channels) {
+                channel.apply();
+            }
+        }
+    };
+
+    /**
+     * Creates a channel whose values are passed to the consumer on the FX thread.
+     */
+    <T> Channel<T> channel(Consumer<T> consumer) {
+        Channel<T> channel = new Channel<>(consumer);
+        channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * Starts applying the updates, must be called on the FX thread.
+     */
+    void start() {
+        timer.start();
+    }
+
+    void stop() {
+        timer.stop();
+    }
+
+    static class Channel<T> {
+        private final Consumer<T> consumer;
+        private final AtomicReference<T> latest = new AtomicReference<>();
+
+        private Channel(Consumer<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * Replaces the pending value, can be called from any thread.
+         */
+        void post(T value) {
+            latest.set(value);
+            postedCounter.increment();
+        }
+
+        private void apply() {
+            T value = latest.getAndSet(null);
+            if (value != null) {
+                consumer.accept(value);
+                appliedCounter.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package snake.metrics;
+
+public interface CounterMBean {
+    long getCount();
+}
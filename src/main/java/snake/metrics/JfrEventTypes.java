@@ -0,0 +1,187 @@
+package snake.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * The JFR event classes, only loaded by {@link JfrEvents} if JFR is available.
+ *
+ * Compiling needs a JDK with the {@code jdk.jfr} API, which OpenJDK 8 includes since 8u262.
+ */
+class JfrEventTypes implements JfrRecorder {
+    @Name("snake.SampleGeneration")
+    @Label("Sample Generation")
+    @Category({ "Snake", "Simulation" })
+    static class SampleGenerationEvent extends Event {
+        @Label("Steps")
+        int steps;
+        @Label("Episodes")
+        int episodes;
+        @Label("Discarded Episodes")
+        int discardedEpisodes;
+        @Label("Samples")
+        int samples;
+    }
+
+    @Name("snake.Fit")
+    @Label("Fit")
+    @Category({ "Snake", "Training" })
+    static class FitEvent extends Event {
+        @Label("Iterations")
+        int iterations;
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    @Name("snake.Evaluation")
+    @Label("Evaluation")
+    @Category({ "Snake", "Training" })
+    static class EvaluationEvent extends Event {
+        @Label("Steps")
+        int steps;
+        @Label("Dead")
+        double dead;
+        @Label("Eaten")
+        double eaten;
+    }
+
+    @Name("snake.Checkpoint")
+    @Label("Checkpoint")
+    @Category({ "Snake", "Training" })
+    static class CheckpointEvent extends Event {
+        @Label("Name")
+        String name;
+    }
+
+    @Name("snake.InferenceSample")
+    @Label("Inference Sample")
+    @Description("Every " + JfrEvents.INFERENCE_SAMPLE_INTERVAL + "th move of a controller, split into feature encoding and model output")
+    @Category({ "Snake", "Inference" })
+    @StackTrace(false)
+    static class InferenceSampleEvent extends Event {
+        @Label("Encode")
+        @Timespan
+        long encodeNanos;
+        @Label("Output")
+        @Timespan
+        long outputNanos;
+        @Label("Cached")
+        boolean cached;
+    }
+
+    @Name("snake.Throughput")
+    @Label("Throughput")
+    @Description("Game steps, samples and model outputs since the previous event")
+    @Category({ "Snake" })
+    @Period("1 s")
+    @StackTrace(false)
+    static class ThroughputEvent extends Event {
+        @Label("Game Steps")
+        long gameSteps;
+        @Label("Samples")
+        long samples;
+        @Label("Model Outputs")
+        long modelOutputs;
+    }
+
+    private final InferenceSampleEvent inferenceSampleProbe = new InferenceSampleEvent();
+
+    private long previousGameSteps;
+    private long previousSamples;
+    private long previousModelOutputs;
+
+    JfrEventTypes() {
+        Counter gameSteps = Metrics.counter("game.steps");
+        Counter samples = Metrics.counter("samples");
+        LatencyHistogram modelOutput = Metrics.histogram("model.output");
+        FlightRecorder.addPeriodicEvent(ThroughputEvent.class, () -> {
+            ThroughputEvent event = new ThroughputEvent();
+            long currentGameSteps = gameSteps.getCount();
+            long currentSamples = samples.getCount();
+            long currentModelOutputs = modelOutput.getCount();
+            event.gameSteps = currentGameSteps - previousGameSteps;
+            event.samples = currentSamples - previousSamples;
+            event.modelOutputs = currentModelOutputs - previousModelOutputs;
+            previousGameSteps = currentGameSteps;
+            previousSamples = currentSamples;
+            previousModelOutputs = currentModelOutputs;
+            event.commit();
+        });
+    }
+
+    @Override
+    public Object beginSampleGeneration() {
+        return begin(new SampleGenerationEvent());
+    }
+
+    @Override
+    public void endSampleGeneration(Object event, int steps, int episodes, int discardedEpisodes, int samples) {
+        SampleGenerationEvent sampleGenerationEvent = (SampleGenerationEvent) event;
+        sampleGenerationEvent.steps = steps;
+        sampleGenerationEvent.episodes = episodes;
+        sampleGenerationEvent.discardedEpisodes = discardedEpisodes;
+        sampleGenerationEvent.samples = samples;
+        sampleGenerationEvent.commit();
+    }
+
+    @Override
+    public Object beginFit() {
+        return begin(new FitEvent());
+    }
+
+    @Override
+    public void endFit(Object event, int iterations, boolean parallel) {
+        FitEvent fitEvent = (FitEvent) event;
+        fitEvent.iterations = iterations;
+        fitEvent.parallel = parallel;
+        fitEvent.commit();
+    }
+
+    @Override
+    public Object beginEvaluation() {
+        return begin(new EvaluationEvent());
+    }
+
+    @Override
+    public void endEvaluation(Object event, int steps, double dead, double eaten) {
+        EvaluationEvent evaluationEvent = (EvaluationEvent) event;
+        evaluationEvent.steps = steps;
+        evaluationEvent.dead = dead;
+        evaluationEvent.eaten = eaten;
+        evaluationEvent.commit();
+    }
+
+    @Override
+    public Object beginCheckpoint() {
+        return begin(new CheckpointEvent());
+    }
+
+    @Override
+    public void endCheckpoint(Object event, String name) {
+        CheckpointEvent checkpointEvent = (CheckpointEvent) event;
+        checkpointEvent.name = name;
+        checkpointEvent.commit();
+    }
+
+    @Override
+    public boolean isInferenceSampleEnabled() {
+        return inferenceSampleProbe.isEnabled();
+    }
+
+    @Override
+    public void inferenceSample(long encodeNanos, long outputNanos, boolean cached) {
+        InferenceSampleEvent event = new InferenceSampleEvent();
+        event.encodeNanos = encodeNanos;
+        event.outputNanos = outputNanos;
+        event.cached = cached;
+        event.commit();
+    }
+
+    // returns null if the event is not recorded, so that the caller skips the end
+    private static Object begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,84 @@
+package snake.metrics;
+
+/**
+ * Emits Java Flight Recorder events for the simulation, inference and training phases.
+ *
+ * Phases that run rarely (sample generation batches, fit, test, save) are recorded as duration events,
+ * single inferences are sampled every {@value #INFERENCE_SAMPLE_INTERVAL} calls,
+ * and the game steps, samples and inferences are recorded as a periodic event with the counts of the last second.
+ *
+ * The event classes ({@code JfrEventTypes}) are only loaded if the JVM supports JFR (OpenJDK 8u262 or later),
+ * otherwise all methods do nothing.
+ */
+public class JfrEvents {
+    public static final int INFERENCE_SAMPLE_INTERVAL = 1024;
+
+    private static final JfrRecorder RECORDER = createRecorder();
+    private static final boolean AVAILABLE = RECORDER != null;
+
+    // loaded by name, so that this class can be loaded by a JVM without the jdk.jfr classes
+    private static JfrRecorder createRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (JfrRecorder) Class.forName("snake.metrics.JfrEventTypes").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the started event to pass to {@link #endSampleGeneration(Object, int, int, int, int)}, or null
+     */
+    public static Object beginSampleGeneration() {
+        return AVAILABLE ? RECORDER.beginSampleGeneration() : null;
+    }
+
+    public static void endSampleGeneration(Object event, int steps, int episodes, int discardedEpisodes, int samples) {
+        if (event != null) {
+            RECORDER.endSampleGeneration(event, steps, episodes, discardedEpisodes, samples);
+        }
+    }
+
+    public static Object beginFit() {
+        return AVAILABLE ? RECORDER.beginFit() : null;
+    }
+
+    public static void endFit(Object event, int iterations, boolean parallel) {
+        if (event != null) {
+            RECORDER.endFit(event, iterations, parallel);
+        }
+    }
+
+    public static Object beginEvaluation() {
+        return AVAILABLE ? RECORDER.beginEvaluation() : null;
+    }
+
+    public static void endEvaluation(Object event, int steps, double dead, double eaten) {
+        if (event != null) {
+            RECORDER.endEvaluation(event, steps, dead, eaten);
+        }
+    }
+
+    public static Object beginCheckpoint() {
+        return AVAILABLE ? RECORDER.beginCheckpoint() : null;
+    }
+
+    public static void endCheckpoint(Object event, String name) {
+        if (event != null) {
+            RECORDER.endCheckpoint(event, name);
+        }
+    }
+
+    /**
+     * Returns whether the inference sample event is recorded, to avoid measuring the phases of a sampled inference otherwise.
+     */
+    public static boolean isInferenceSampleEnabled() {
+        return AVAILABLE && RECORDER.isInferenceSampleEnabled();
+    }
+
+    public static void inferenceSample(long encodeNanos, long outputNanos, boolean cached) {
+        if (AVAILABLE) {
+            RECORDER.inferenceSample(encodeNanos, outputNanos, cached);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package snake.metrics;
+
+/**
+ * The events recorded through {@link JfrEvents}, implemented with the JFR API in the source set {@code jfr}.
+ */
+interface JfrRecorder {
+    Object beginSampleGeneration();
+
+    void endSampleGeneration(Object event, int steps, int episodes, int discardedEpisodes, int samples);
+
+    Object beginFit();
+
+    void endFit(Object event, int iterations, boolean parallel);
+
+    Object beginEvaluation();
+
+    void endEvaluation(Object event, int steps, double dead, double eaten);
+
+    Object beginCheckpoint();
+
+    void endCheckpoint(Object event, String name);
+
+    boolean isInferenceSampleEnabled();
+
+    void inferenceSample(long encodeNanos, long outputNanos, boolean cached);
+}
@@ -0,0 +1,53 @@
+package snake.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the counters and latency histograms of the application.
+ *
+ * Every metric is also published as a JMX MBean named {@code snake:type=Counter,name=<name>} or {@code snake:type=LatencyHistogram,name=<name>}.
+ */
+public class Metrics {
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> register(new Counter(key), "Counter", key));
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> register(new LatencyHistogram(key), "LatencyHistogram", key));
+    }
+
+    public static List<Counter> getCounters() {
+        List<Counter> result = new ArrayList<>(counters.values());
+        result.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    public static List<LatencyHistogram> getHistograms() {
+        List<LatencyHistogram> result = new ArrayList<>(histograms.values());
+        result.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    private static <T> T register(T metric, String type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("snake:type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metric, objectName);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+        return metric;
+    }
+}
@@ -0,0 +1,97 @@
+package snake.metrics;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically prints all {@link Metrics} to the console or appends them to a CSV file.
+ *
+ * Counters are reported with their total and their rate per second since the previous report.
+ * The CSV file has one row per metric and report (time, name, count, rate, mean, median, p95, p99, max).
+ */
+public class MetricsReporter {
+    private final String csvFileName;
+    private final ScheduledExecutorService executor;
+    private final Map<String, Long> previousCounts = new HashMap<>();
+    private long previousNanos = System.nanoTime();
+
+    /**
+     * @param csvFileName the CSV file to append to, or null to print to the console
+     */
+    public MetricsReporter(String csvFileName, long periodSeconds) {
+        this.csvFileName = csvFileName;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a reporter if the system property {@code snake.metrics.period} (seconds) is set,
+     * writing to the CSV file in {@code snake.metrics.csv} if set.
+     *
+     * @return the reporter or null
+     */
+    public static MetricsReporter startFromSystemProperties() {
+        String period = System.getProperty("snake.metrics.period");
+        if (period == null) {
+            return null;
+        }
+        return new MetricsReporter(System.getProperty("snake.metrics.csv"), Long.parseLong(period));
+    }
+
+    public synchronized void report() {
+        long nanos = System.nanoTime();
+        double seconds = (nanos - previousNanos) / 1e9;
+        previousNanos = nanos;
+        long time = System.currentTimeMillis();
+
+        List<Counter> counters = Metrics.getCounters();
+        List<LatencyHistogram> histograms = Metrics.getHistograms();
+
+        if (csvFileName == null) {
+            System.out.println("Metrics:");
+            for (Counter counter : counters) {
+                System.out.printf("  %-24s count=%d rate=%.1f/s%n", counter.getName(), counter.getCount(), rate(counter, seconds));
+            }
+            for (LatencyHistogram histogram : histograms) {
+                System.out.printf("  %-24s count=%d mean=%.3fms p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms%n", histogram.getName(), histogram.getCount(),
+                        histogram.getMeanMillis(), histogram.getMedianMillis(), histogram.get95thPercentileMillis(), histogram.get99thPercentileMillis(), histogram.getMaxMillis());
+            }
+            return;
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(csvFileName, true))) {
+            for (Counter counter : counters) {
+                writer.printf(Locale.ROOT, "%d,%s,%d,%.3f,,,,,%n", time, counter.getName(), counter.getCount(), rate(counter, seconds));
+            }
+            for (LatencyHistogram histogram : histograms) {
+                writer.printf(Locale.ROOT, "%d,%s,%d,,%.6f,%.6f,%.6f,%.6f,%.6f%n", time, histogram.getName(), histogram.getCount(),
+                        histogram.getMeanMillis(), histogram.getMedianMillis(), histogram.get95thPercentileMillis(), histogram.get99thPercentileMillis(), histogram.getMaxMillis());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void stop() {
+        executor.shutdown();
+        report();
+    }
+
+    private double rate(Counter counter, double seconds) {
+        long count = counter.getCount();
+        Long previousCount = previousCounts.put(counter.getName(), count);
+        return seconds > 0 ? (count - (previousCount == null ? 0 : previousCount)) / seconds : 0;
+    }
+}
@@ -3,9 +3,11 @@ package snake.wall;
 import snake.domain.SnakeMap;
 import snake.domain.Tile;
 
+import java.util.SplittableRandom;
+
 public class CrosshairWallBuilder implements WallBuilder {
     @Override
-    public int createWall(SnakeMap map) {
+    public int createWall(SnakeMap map, SplittableRandom random) {
         int count = 0;
 
         int startX = map.width / 4;
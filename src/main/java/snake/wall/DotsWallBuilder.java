@@ -3,10 +3,9 @@ package snake.wall;
 import snake.domain.SnakeMap;
 import snake.domain.Tile;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class DotsWallBuilder implements WallBuilder {
-    private final Random random = new Random();
     private final int percent;
 
     public DotsWallBuilder(int percent) {
@@ -14,7 +13,7 @@ public class DotsWallBuilder implements WallBuilder {
     }
 
     @Override
-    public int createWall(SnakeMap map) {
+    public int createWall(SnakeMap map, SplittableRandom random) {
         int n = map.width * map.height * percent / 100;
 
         for (int i = 0; i < n; i++) {
@@ -2,9 +2,11 @@ package snake.wall;
 
 import snake.domain.SnakeMap;
 
+import java.util.SplittableRandom;
+
 public class NoWallBuilder implements WallBuilder {
     @Override
-    public int createWall(SnakeMap map) {
+    public int createWall(SnakeMap map, SplittableRandom random) {
         return 0;
     }
 
@@ -2,10 +2,9 @@ package snake.wall;
 
 import snake.domain.SnakeMap;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class RandomCompositeWallBuilder implements WallBuilder {
-    private final Random random = new Random();
     private final WallBuilder[] wallBuilders;
 
     public RandomCompositeWallBuilder() {
@@ -17,9 +16,9 @@ public class RandomCompositeWallBuilder implements WallBuilder {
     }
 
     @Override
-    public int createWall(SnakeMap map) {
+    public int createWall(SnakeMap map, SplittableRandom random) {
         int r = random.nextInt(wallBuilders.length);
-        return wallBuilders[r].createWall(map);
+        return wallBuilders[r].createWall(map, random);
     }
 
     @Override
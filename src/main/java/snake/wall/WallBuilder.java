@@ -2,6 +2,8 @@ package snake.wall;
 
 import snake.domain.SnakeMap;
 
+import java.util.SplittableRandom;
+
 public interface WallBuilder {
-    int createWall(SnakeMap map);
+    int createWall(SnakeMap map, SplittableRandom random);
 }
@@ -0,0 +1,27 @@
+package snake.controller;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DistributedTrainingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRunLocal() throws Exception {
+        String name = new File(folder.getRoot(), "distributed").getPath();
+        float[] initialParameters = DeeplearningSnakeController.create(name).getParameters();
+
+        // the coordinator fails if a worker ends up with other parameters than the average
+        float[] parameters = DistributedTraining.runLocal(name, 2, 1, 3600, 3);
+
+        assertEquals(initialParameters.length, parameters.length);
+        assertArrayEquals(parameters, DeeplearningSnakeController.create(name).getParameters(), 0.0f);
+    }
+}
@@ -0,0 +1,109 @@
+package snake.controller;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MlpInferenceEngineTest {
+    private static final int INPUT_COUNT = 27;
+    private static final int OUTPUT_COUNT = 4;
+
+    private static final Activation[] HIDDEN_ACTIVATIONS = {
+            Activation.IDENTITY, Activation.RELU, Activation.LEAKYRELU, Activation.TANH, Activation.SIGMOID, Activation.SOFTMAX
+    };
+    private static final Activation[] OUTPUT_ACTIVATIONS = {
+            Activation.SOFTMAX, Activation.IDENTITY, Activation.SIGMOID, Activation.TANH
+    };
+
+    @Test
+    public void testSameOutputAsNetwork() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (Activation hiddenActivation : HIDDEN_ACTIVATIONS) {
+            for (Activation outputActivation : OUTPUT_ACTIVATIONS) {
+                MultiLayerNetwork model = createNetwork(hiddenActivation, outputActivation, 8,
+                        new DenseLayer.Builder().nIn(INPUT_COUNT).nOut(16).build(),
+                        new DenseLayer.Builder().nIn(16).nOut(8).build());
+                assertTrue(hiddenActivation + "/" + outputActivation, MlpInferenceEngine.supports(model));
+                MlpInferenceEngine engine = MlpInferenceEngine.create(model);
+                assertNotNull(hiddenActivation + "/" + outputActivation, engine);
+                assertEquals(INPUT_COUNT, engine.getInputCount());
+                assertEquals(OUTPUT_COUNT, engine.getOutputCount());
+
+                float[] input = new float[INPUT_COUNT];
+                float[] output = new float[OUTPUT_COUNT];
+                for (int sample = 0; sample < 20; sample++) {
+                    for (int i = 0; i < INPUT_COUNT; i++) {
+                        input[i] = (float) (random.nextDouble() * 2 - 1);
+                    }
+                    engine.output(input, 0, output, 0);
+
+                    INDArray expected = model.output(Nd4j.create(input, new int[] { 1, INPUT_COUNT }));
+                    for (int i = 0; i < OUTPUT_COUNT; i++) {
+                        assertEquals(hiddenActivation + "/" + outputActivation, expected.getFloat(i), output[i], 1e-5);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedActivation() {
+        MultiLayerNetwork model = createNetwork(Activation.ELU, Activation.SOFTMAX, 16,
+                new DenseLayer.Builder().nIn(INPUT_COUNT).nOut(16).build());
+        assertFalse(MlpInferenceEngine.supports(model));
+        assertNull(MlpInferenceEngine.create(model));
+    }
+
+    @Test
+    public void testUnsupportedLayer() {
+        MultiLayerNetwork model = createNetwork(Activation.RELU, Activation.SOFTMAX, 16,
+                new DenseLayer.Builder().nIn(INPUT_COUNT).nOut(16).build(),
+                new BatchNormalization.Builder().nIn(16).nOut(16).build());
+        assertFalse(MlpInferenceEngine.supports(model));
+        assertNull(MlpInferenceEngine.create(model));
+    }
+
+    private static MultiLayerNetwork createNetwork(Activation hiddenActivation, Activation outputActivation, int lastHiddenSize, org.deeplearning4j.nn.conf.layers.Layer... hiddenLayers) {
+        NeuralNetConfiguration.ListBuilder listBuilder = new NeuralNetConfiguration.Builder()
+                .seed(123)
+                .activation(hiddenActivation)
+                .weightInit(WeightInit.XAVIER)
+                .list();
+        for (int i = 0; i < hiddenLayers.length; i++) {
+            listBuilder.layer(i, hiddenLayers[i]);
+        }
+        MultiLayerConfiguration configuration = listBuilder
+                .layer(hiddenLayers.length, new OutputLayer.Builder().nIn(lastHiddenSize).nOut(OUTPUT_COUNT)
+                        .activation(outputActivation)
+                        .lossFunction(LossFunctions.LossFunction.MSE)
+                        .build())
+                .build();
+        MultiLayerNetwork model = new MultiLayerNetwork(configuration);
+        model.init();
+
+        // non-zero biases, so that the bias handling is compared too
+        INDArray params = model.params();
+        SplittableRandom random = new SplittableRandom(2);
+        for (int i = 0; i < params.length(); i++) {
+            params.putScalar(i, params.getDouble(i) + (random.nextDouble() - 0.5) * 0.2);
+        }
+        return model;
+    }
+}
@@ -0,0 +1,73 @@
+package snake.controller;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrainingLogTest {
+    // more than one mapped chunk, so that records are read from the mappings and from the file
+    private static final int RECORD_COUNT = 70000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendQueryReopen() throws Exception {
+        String fileName = new File(folder.getRoot(), "test.train").getPath();
+        try (TrainingLog trainingLog = TrainingLog.open(fileName)) {
+            assertEquals(0, trainingLog.getNextEpoch());
+            for (int epoch = 0; epoch < RECORD_COUNT; epoch++) {
+                trainingLog.append(epoch, epoch * 0.5, epoch % 7, Double.NaN, 100);
+                if (epoch % 10000 == 0) {
+                    // reading between appends must not keep stale mappings or records
+                    assertEquals(epoch, trainingLog.getRecord(epoch).epoch);
+                    List<TrainingLog.Record> records = trainingLog.query(0, Integer.MAX_VALUE, 100);
+                    assertEquals(epoch, records.get(records.size() - 1).epoch);
+                }
+                assertEquals(epoch + 1, trainingLog.getNextEpoch());
+            }
+
+            assertRecords(trainingLog);
+        }
+
+        try (TrainingLog trainingLog = TrainingLog.open(fileName)) {
+            assertEquals(RECORD_COUNT, trainingLog.getRecordCount());
+            assertEquals(RECORD_COUNT, trainingLog.getNextEpoch());
+            assertRecords(trainingLog);
+        }
+    }
+
+    private static void assertRecords(TrainingLog trainingLog) {
+        for (int index : new int[] { 0, 65535, 65536, RECORD_COUNT - 1 }) {
+            TrainingLog.Record record = trainingLog.getRecord(index);
+            assertEquals(index, record.epoch);
+            assertEquals(index * 0.5, record.score, 0.0);
+            assertEquals(index % 7, record.dead, 0.0);
+            assertEquals(Double.NaN, record.eaten, 0.0);
+        }
+
+        List<TrainingLog.Record> records = trainingLog.query(65530, 65540, 100);
+        assertEquals(10, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(65530 + i, records.get(i).epoch);
+        }
+
+        // 2 buckets spanning the chunk boundary: minimum and maximum of every bucket
+        records = trainingLog.query(60000, RECORD_COUNT, 4);
+        assertEquals(4, records.size());
+        assertEquals(60000, records.get(0).epoch);
+        assertEquals(60000 * 0.5, records.get(0).score, 0.0);
+        assertEquals(0, records.get(0).dead, 0.0);
+        assertEquals(64999, records.get(1).epoch);
+        assertEquals(64999 * 0.5, records.get(1).score, 0.0);
+        assertEquals(6, records.get(1).dead, 0.0);
+        assertEquals(65000, records.get(2).epoch);
+        assertEquals(RECORD_COUNT - 1, records.get(3).epoch);
+        assertEquals((RECORD_COUNT - 1) * 0.5, records.get(3).score, 0.0);
+    }
+}
@@ -0,0 +1,97 @@
+package snake.controller;
+
+import org.junit.Test;
+import snake.domain.Move;
+import snake.domain.Snake;
+import snake.domain.SnakeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TranspositionTableTest {
+    @Test
+    public void testStoreProbe() {
+        TranspositionTable table = new TranspositionTable(4);
+        long hash = 0x123456789abcdefL;
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(hash));
+
+        table.store(hash, Move.Left, 0.75f, 3);
+        long entry = table.probe(hash);
+        assertEquals(Move.Left, TranspositionTable.getMove(entry));
+        assertEquals(0.75f, TranspositionTable.getValue(entry), 0.0f);
+        assertEquals(3, TranspositionTable.getDepth(entry));
+
+        // same slot, other position
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(hash ^ (1L << 40)));
+
+        table.store(hash, null, -1.0f, 4);
+        assertEquals(null, TranspositionTable.getMove(table.probe(hash)));
+
+        table.clear();
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(hash));
+    }
+
+    @Test
+    public void testDepthReplacement() {
+        TranspositionTable table = new TranspositionTable(4);
+        long hash = 0x0fedcba987654321L;
+
+        table.store(hash, Move.Up, 1.0f, 5);
+        table.store(hash, Move.Down, 2.0f, 3);
+        long entry = table.probe(hash);
+        assertEquals(Move.Up, TranspositionTable.getMove(entry));
+        assertEquals(5, TranspositionTable.getDepth(entry));
+
+        table.store(hash, Move.Down, 2.0f, 5);
+        assertEquals(Move.Down, TranspositionTable.getMove(table.probe(hash)));
+
+        table.store(hash, Move.Right, 3.0f, 7);
+        entry = table.probe(hash);
+        assertEquals(Move.Right, TranspositionTable.getMove(entry));
+        assertEquals(3.0f, TranspositionTable.getValue(entry), 0.0f);
+        assertEquals(7, TranspositionTable.getDepth(entry));
+
+        // another position in the same slot always replaces, regardless of the depth
+        long otherHash = hash ^ (1L << 40);
+        table.store(otherHash, Move.Left, 4.0f, 1);
+        assertEquals(Move.Left, TranspositionTable.getMove(table.probe(otherHash)));
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(hash));
+    }
+
+    @Test
+    public void testBodyPathHash() {
+        // both snakes cover the whole 3x3 map from the tail at (0, 0) to the head at (2, 2), once row by row and once column by column
+        SnakeMap rows = play(1, 0, 1, 0, 0, 1, -1, 0, -1, 0, 0, 1, 1, 0, 1, 0);
+        SnakeMap columns = play(0, 1, 0, 1, 1, 0, 0, -1, 0, -1, 1, 0, 0, 1, 0, 1);
+        assertEquals(tiles(rows), tiles(columns));
+        assertNotEquals(rows.getHash(), columns.getHash());
+
+        TranspositionTable table = new TranspositionTable(10);
+        table.store(rows.getHash(), Move.Up, 1.0f, 2);
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(columns.getHash()));
+        table.store(columns.getHash(), Move.Left, 2.0f, 2);
+        assertEquals(Move.Up, TranspositionTable.getMove(table.probe(rows.getHash())));
+        assertEquals(Move.Left, TranspositionTable.getMove(table.probe(columns.getHash())));
+    }
+
+    private static SnakeMap play(int... deltas) {
+        SnakeMap map = new SnakeMap(3, 3);
+        Snake snake = new Snake(0, 0, 9, 8);
+        snake.render(map);
+        for (int i = 0; i < deltas.length; i += 2) {
+            snake.move(deltas[i], deltas[i + 1], map);
+        }
+        return map;
+    }
+
+    private static String tiles(SnakeMap map) {
+        StringBuilder result = new StringBuilder();
+        for (int y = 0; y < map.height; y++) {
+            for (int x = 0; x < map.width; x++) {
+                result.append(map.get(x, y).tileChar);
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+}
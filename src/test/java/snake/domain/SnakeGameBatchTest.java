@@ -0,0 +1,82 @@
+package snake.domain;
+
+import org.junit.Test;
+import snake.wall.RandomCompositeWallBuilder;
+import snake.wall.WallBuilder;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class SnakeGameBatchTest {
+    private static final Move[] MOVES = Move.values();
+
+    @Test
+    public void testStepsLikeSeparateGames() {
+        int count = 32;
+        int width = 6;
+        int height = 6;
+        WallBuilder wallBuilder = new RandomCompositeWallBuilder();
+        SplittableRandom random = new SplittableRandom(42);
+
+        SnakeGameBatch batch = new SnakeGameBatch(count, width, height);
+        SnakeGame[] games = new SnakeGame[count];
+        Move[] nextMoves = new Move[count];
+        for (int i = 0; i < count; i++) {
+            long seed = random.nextLong();
+            int game = i;
+            games[i] = new SnakeGame(width, height, wallBuilder, 1, (snake, snakeMap) -> nextMoves[game], new SplittableRandom(seed));
+            batch.reset(i, wallBuilder, 1, new SplittableRandom(seed));
+            assertSameState(games[i], batch, i);
+        }
+
+        int[] moves = new int[count];
+        boolean[] running = new boolean[count];
+        Arrays.fill(running, true);
+        for (int step = 0; step < 200; step++) {
+            for (int i = 0; i < count; i++) {
+                nextMoves[i] = pickMove(games[i], random);
+                moves[i] = nextMoves[i].ordinal();
+            }
+            byte[] results = batch.step(moves);
+            for (int i = 0; i < count; i++) {
+                if (!running[i]) {
+                    assertEquals(0, results[i]);
+                    continue;
+                }
+                running[i] = games[i].step();
+                assertEquals(running[i], batch.isAlive(i));
+                assertEquals(games[i].getHasEaten(), (results[i] & SnakeGameBatch.EATEN) != 0);
+                assertSameState(games[i], batch, i);
+            }
+        }
+    }
+
+    private static Move pickMove(SnakeGame game, SplittableRandom random) {
+        int mask = game.snakeMap.getValidMoveMask(game.snake.getX(0), game.snake.getY(0));
+        if (mask != 0 && random.nextInt(20) != 0) {
+            int move;
+            do {
+                move = random.nextInt(MOVES.length);
+            } while ((mask & 1 << move) == 0);
+            return MOVES[move];
+        }
+        return MOVES[random.nextInt(MOVES.length)];
+    }
+
+    private static void assertSameState(SnakeGame game, SnakeGameBatch batch, int index) {
+        for (int y = 0; y < game.height; y++) {
+            for (int x = 0; x < game.width; x++) {
+                assertEquals(game.getTiles(x, y), batch.getTile(index, x, y));
+            }
+        }
+        assertEquals(game.snake.getLength(), batch.getLength(index));
+        for (int i = 0; i <= game.snake.getLength(); i++) {
+            assertEquals(game.snake.getX(i), batch.getX(index, i));
+            assertEquals(game.snake.getY(i), batch.getY(index, i));
+        }
+        assertEquals(game.snakeMap.getAppleX(), batch.getAppleX(index));
+        assertEquals(game.snakeMap.getAppleY(), batch.getAppleY(index));
+    }
+}
@@ -0,0 +1,102 @@
+package snake.domain;
+
+import org.junit.Test;
+import snake.wall.RandomCompositeWallBuilder;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class SnakeGameUndoTest {
+    private static final Move[] MOVES = Move.values();
+
+    @Test
+    public void testRandomApplyUndoSequences() {
+        SplittableRandom random = new SplittableRandom(1234);
+        for (int gameIndex = 0; gameIndex < 200; gameIndex++) {
+            SnakeGame game = new SnakeGame(6, 6, new RandomCompositeWallBuilder(), 1, null, random.split());
+            Deque<Applied> applied = new ArrayDeque<>();
+            boolean running = true;
+
+            for (int operation = 0; operation < 300; operation++) {
+                if (running && applied.size() < 40 && (applied.isEmpty() || random.nextInt(3) != 0)) {
+                    Move move = pickMove(game, random);
+                    String before = snapshot(game);
+                    running = game.apply(move);
+                    applied.push(new Applied(move, before, snapshot(game), running));
+                } else if (!applied.isEmpty()) {
+                    Applied last = applied.pop();
+                    game.undo();
+                    assertEquals(last.before, snapshot(game));
+
+                    if (random.nextBoolean()) {
+                        // the apple generator is rewound, so the same move places the same apple again
+                        assertEquals(last.running, game.apply(last.move));
+                        assertEquals(last.after, snapshot(game));
+                        applied.push(last);
+                    }
+                    running = applied.isEmpty() || applied.peek().running;
+                }
+                assertEquals(applied.size(), game.getUndoDepth());
+            }
+        }
+    }
+
+    private static Move pickMove(SnakeGame game, SplittableRandom random) {
+        int mask = game.snakeMap.getValidMoveMask(game.snake.getX(0), game.snake.getY(0));
+        if (mask != 0 && random.nextInt(10) != 0) {
+            int move;
+            do {
+                move = random.nextInt(MOVES.length);
+            } while ((mask & 1 << move) == 0);
+            return MOVES[move];
+        }
+        return MOVES[random.nextInt(MOVES.length)];
+    }
+
+    private static String snapshot(SnakeGame game) {
+        SnakeMap map = game.snakeMap;
+        StringBuilder result = new StringBuilder();
+        for (int y = 0; y < game.height; y++) {
+            for (int x = 0; x < game.width; x++) {
+                result.append(map.get(x, y).tileChar);
+            }
+            result.append('\n');
+        }
+
+        result.append("snake:");
+        for (int i = 0; i <= game.snake.getLength(); i++) {
+            result.append(' ').append(game.snake.getX(i)).append(',').append(game.snake.getY(i));
+        }
+        result.append(" alive=").append(game.snake.alive);
+        result.append("\napple: ").append(map.getAppleX()).append(',').append(map.getAppleY());
+        result.append("\nhash: ").append(game.getHash());
+        result.append("\nhasEaten: ").append(game.getHasEaten()).append(" move: ").append(game.getMove());
+
+        result.append("\nfree:");
+        for (int i = 0; i < map.countFreeCells(); i++) {
+            result.append(' ').append(map.getFreeCell(i));
+        }
+        result.append("\ncandidates:");
+        for (int i = 0; i < map.countAppleCandidateCells(); i++) {
+            result.append(' ').append(map.getAppleCandidateCell(i));
+        }
+        return result.toString();
+    }
+
+    private static class Applied {
+        final Move move;
+        final String before;
+        final String after;
+        final boolean running;
+
+        Applied(Move move, String before, String after, boolean running) {
+            this.move = move;
+            this.before = before;
+            this.after = after;
+            this.running = running;
+        }
+    }
+}